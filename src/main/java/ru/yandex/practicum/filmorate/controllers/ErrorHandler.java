@@ -5,6 +5,7 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import ru.yandex.practicum.filmorate.exceptions.ObjectNotFoundException;
+import ru.yandex.practicum.filmorate.exceptions.SearchLimitExceededException;
 import ru.yandex.practicum.filmorate.model.ErrorResponse;
 
 import javax.validation.ConstraintViolationException;
@@ -22,6 +23,14 @@ public class ErrorHandler {
         return new ErrorResponse("Несуществующий id: " + e.getMessage());
     }
 
+    // обработка запросов, прерванных ограничением на объем работы - ответ не получен, но может существовать
+    @ExceptionHandler(SearchLimitExceededException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public ErrorResponse handleSearchLimitExceeded(final RuntimeException e) {
+
+        return new ErrorResponse("Превышено ограничение на объем поиска: " + e.getMessage());
+    }
+
     // обработка ошибок при прохождении валидации
     @ExceptionHandler(ConstraintViolationException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
@@ -2,13 +2,21 @@ package ru.yandex.practicum.filmorate.controllers;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.Optional;
 import javax.validation.Valid;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Pattern;
+import javax.validation.constraints.Positive;
+import javax.validation.constraints.PositiveOrZero;
 
 @RestController
 @Slf4j
@@ -21,7 +29,7 @@ public class FilmController {
     http://localhost:8080/films */
 
     private final FilmService filmService;
-
+    private final NdjsonExport ndjsonExport;
 
     // обработка POST-запроса на добавление информации о фильме
     @PostMapping()
@@ -45,11 +53,27 @@ public class FilmController {
         return filmService.getFilmById(id);
     }
 
-    // обработка GET-запроса на получение списка всех фильмов
+    // обработка GET-запроса на получение списка фильмов или его страницы (?after=<id последнего фильма>&limit=)
     @GetMapping()
-    public List<Film> listFilms() {
+    public ResponseEntity<List<Film>> listFilms(@RequestParam(required = false) @PositiveOrZero Integer after,
+                                                @RequestParam(required = false) @Positive @Max(1000)
+                                                Integer limit) {
+
+        // без параметров страницы возвращается весь список, как и до появления постраничной выдачи
+        if (after == null && limit == null) {
+            return ResponseEntity.ok(filmService.listFilms());
+        }
 
-        return filmService.listFilms();
+        int pageSize = Optional.ofNullable(limit).orElse(Pagination.DEFAULT_PAGE_SIZE);
+
+        return Pagination.page(filmService.listFilms(after, pageSize), pageSize, Film::getId);
+    }
+
+    // обработка GET-запроса на выгрузку всех фильмов в формате NDJSON - фильмы пишутся в ответ по мере чтения из базы
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportFilms() {
+
+        return ndjsonExport.stream(Film.class, filmService::exportFilms);
     }
 
     // обработка PUT-запроса на добавление лайка фильму
@@ -66,6 +90,13 @@ public class FilmController {
         filmService.deleteLike(id, userId);
     }
 
+    // обработка GET-запроса на получение количества лайков у фильма
+    @GetMapping("/{id}/likes/count")
+    public Long getFilmLikesCount(@PathVariable Integer id) {
+
+        return filmService.getFilmLikesCount(id);
+    }
+
     // обработка GET-запроса на получение списка наиболее популярных фильмов
     @GetMapping("/popular")
     public List<Film> listMostPopularFilms(@RequestParam(required = false, defaultValue = "10") Integer count) {
@@ -73,6 +104,18 @@ public class FilmController {
         return filmService.listMostPopularFilms(count);
     }
 
+    // обработка GET-запроса на получение списка фильмов, набравших больше всего лайков за период (например, 24h или 7d)
+    @GetMapping("/trending")
+    public List<Film> listTrendingFilms(@RequestParam(defaultValue = "24h")
+                                        @Pattern(regexp = "^\\d{1,4}[hd]$") String window,
+                                        @RequestParam(defaultValue = "10") @Positive Integer count) {
+
+        long amount = Long.parseLong(window.substring(0, window.length() - 1));
+        Duration duration = window.endsWith("d") ? Duration.ofDays(amount) : Duration.ofHours(amount);
+
+        return filmService.listTrendingFilms(duration, count);
+    }
+
 }
 
 
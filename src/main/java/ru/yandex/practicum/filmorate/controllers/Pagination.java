@@ -0,0 +1,34 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+import java.util.function.Function;
+
+public final class Pagination {
+
+    // постраничная выдача списков, упорядоченных по id (?after=<id последнего элемента>&limit=)
+
+    // заголовок ответа с id, после которого начинается следующая страница списка
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    // размер страницы, если указан только id последнего элемента
+    public static final int DEFAULT_PAGE_SIZE = 100;
+
+    private Pagination() {
+    }
+
+    // формирование ответа со страницей списка; заполненная страница - признак того, что за ней могут быть
+    // еще элементы, и в ответ добавляется id ее последнего элемента
+    static <T> ResponseEntity<List<T>> page(List<T> items, int limit, Function<T, ?> id) {
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+
+        if (!items.isEmpty() && items.size() == limit) {
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(id.apply(items.get(items.size() - 1))));
+        }
+
+        return response.body(items);
+    }
+
+}
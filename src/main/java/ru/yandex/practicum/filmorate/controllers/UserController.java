@@ -5,13 +5,20 @@ import javax.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import ru.yandex.practicum.filmorate.model.FeedEvent;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.UserService;
 
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Positive;
+import javax.validation.constraints.PositiveOrZero;
 import java.util.List;
+import java.util.Optional;
 
 
 @RestController
@@ -25,6 +32,7 @@ public class UserController {
     http://localhost:8080/users */
 
     private final UserService userService;
+    private final NdjsonExport ndjsonExport;
 
     // обработка POST-запроса на добавление данных пользователя
     @PostMapping()
@@ -40,11 +48,28 @@ public class UserController {
         return userService.updateUser(user);
     }
 
-    // обработка GET-запроса на получение списка пользователей
+    // обработка GET-запроса на получение списка пользователей или его страницы
+    // (?after=<id последнего пользователя>&limit=)
     @GetMapping()
-    public List<User> listUsers() {
+    public ResponseEntity<List<User>> listUsers(@RequestParam(required = false) @PositiveOrZero Long after,
+                                                @RequestParam(required = false) @Positive @Max(1000)
+                                                Integer limit) {
 
-        return userService.listUsers();
+        // без параметров страницы возвращается весь список, как и до появления постраничной выдачи
+        if (after == null && limit == null) {
+            return ResponseEntity.ok(userService.listUsers());
+        }
+
+        int pageSize = Optional.ofNullable(limit).orElse(Pagination.DEFAULT_PAGE_SIZE);
+
+        return Pagination.page(userService.listUsers(after, pageSize), pageSize, User::getId);
+    }
+
+    // обработка GET-запроса на выгрузку всех пользователей в формате NDJSON
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportUsers() {
+
+        return ndjsonExport.stream(User.class, userService::exportUsers);
     }
 
     // обработка GET-запроса на получение пользователя по id
@@ -75,6 +100,21 @@ public class UserController {
         return userService.listUserFriends(id);
     }
 
+    // обработка GET-запроса на получение количества друзей
+    @GetMapping("{id}/friends/count")
+    public Integer countUserFriends(@PathVariable Long id) {
+
+        return userService.countUserFriends(id);
+    }
+
+    // обработка GET-запроса на получение рекомендаций друзей - друзей друзей по количеству общих друзей
+    @GetMapping("{id}/friends/suggestions")
+    public List<User> listFriendSuggestions(@PathVariable Long id,
+                                            @RequestParam(defaultValue = "10") @Positive @Max(100) Integer count) {
+
+        return userService.listFriendSuggestions(id, count);
+    }
+
     // обработка GET-запроса на получение списка общих друзей
     @GetMapping("{id}/friends/common/{otherId}")
     public List<User> listCommonFriends(@RequestBody @PathVariable Long id, @PathVariable Long otherId) {
@@ -82,6 +122,28 @@ public class UserController {
         return userService.listCommonFriends(id, otherId);
     }
 
+    // обработка GET-запроса на получение ленты пользователя - фильмов, которым недавно поставили лайки его друзья
+    @GetMapping("{id}/feed")
+    public List<FeedEvent> listFeed(@PathVariable Long id,
+                                    @RequestParam(defaultValue = "20") @Positive @Max(100) Integer count) {
+
+        return userService.listFeed(id, count);
+    }
+
+    // обработка GET-запроса на получение кратчайшей цепочки друзей между пользователями
+    @GetMapping("{id}/path/{otherId}")
+    public List<User> findFriendshipPath(@PathVariable Long id, @PathVariable Long otherId) {
+
+        return userService.findFriendshipPath(id, otherId);
+    }
+
+    // обработка GET-запроса на получение количества общих друзей
+    @GetMapping("{id}/friends/common/{otherId}/count")
+    public Integer countCommonFriends(@PathVariable Long id, @PathVariable Long otherId) {
+
+        return userService.countCommonFriends(id, otherId);
+    }
+
 }
 
 
@@ -0,0 +1,9 @@
+package ru.yandex.practicum.filmorate.exceptions;
+
+public class SearchLimitExceededException extends RuntimeException {
+
+    public SearchLimitExceededException(String message) {
+        super(message);
+    }
+
+}
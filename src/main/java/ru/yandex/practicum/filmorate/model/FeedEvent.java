@@ -0,0 +1,20 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+
+import java.time.Instant;
+
+@Value
+@Builder(toBuilder = true)
+@RequiredArgsConstructor
+public class FeedEvent {
+
+    // запись ленты пользователя - лайк, поставленный фильму другом пользователя
+
+    Integer filmId; // id фильма
+    Long userId; // id друга, поставившего лайк
+    Instant likedAt; // время лайка
+
+}
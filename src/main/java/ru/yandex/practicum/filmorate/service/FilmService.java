@@ -2,7 +2,9 @@ package ru.yandex.practicum.filmorate.service;
 
 import ru.yandex.practicum.filmorate.model.*;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.function.Consumer;
 
 // сервис для определения рейтинга фильмов
 public interface FilmService {
@@ -13,13 +15,21 @@ public interface FilmService {
 
     List<Film> listFilms(); // получение списка фильмов
 
+    List<Film> listFilms(Integer afterId, int limit); // получение страницы списка фильмов с id больше afterId
+
+    void exportFilms(Consumer<Film> action); // передача всех фильмов на обработку по одному
+
     Film getFilmById(Integer id); // получение фильма по идентификатору
 
     void addLike(Integer id, Long userId); // добавление лайка фильму
 
     void deleteLike(Integer id, Long userId); // удаление лайка у фильма
 
+    Long getFilmLikesCount(Integer id); // получение количества лайков у фильма
+
     List<Film> listMostPopularFilms(Integer count); // получение списка наиболее популярных фильмов
 
+    List<Film> listTrendingFilms(Duration window, Integer count); // получение фильмов, популярных за период
+
 
 }
@@ -1,8 +1,10 @@
 package ru.yandex.practicum.filmorate.service;
 
+import ru.yandex.practicum.filmorate.model.FeedEvent;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 // сервис для добавления, удаления, получения списков друзей пользователя
 
@@ -13,6 +15,10 @@ public interface UserService {
 
     List<User> listUsers(); // получение списка пользователей
 
+    List<User> listUsers(Long afterId, int limit); // получение страницы списка пользователей с id больше afterId
+
+    void exportUsers(Consumer<User> action); // передача всех пользователей на обработку по одному
+
     User getUserById(Long id); // получение пользователя по идентификатору
 
     void addFriend(Long userId, Long friendId); //добавление пользователя в список друзей
@@ -23,6 +29,16 @@ public interface UserService {
 
     List<User> listCommonFriends(Long userId, Long otherId); // получение списка общих друзей пользователей
 
+    Integer countUserFriends(Long id); // подсчет друзей пользователя
+
+    Integer countCommonFriends(Long userId, Long otherId); // подсчет общих друзей пользователей
+
+    List<User> listFriendSuggestions(Long userId, Integer count); // получение рекомендаций друзей для пользователя
+
+    List<User> findFriendshipPath(Long userId, Long otherId); // получение кратчайшей цепочки друзей между пользователями
+
+    List<FeedEvent> listFeed(Long userId, Integer count); // получение последних лайков друзей пользователя
+
     Boolean isFriendShipConfirmed(Long userId, Long friendId); // подтверждение взаимности дружбы пользователей
 
 
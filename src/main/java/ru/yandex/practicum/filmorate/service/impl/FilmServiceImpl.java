@@ -8,8 +8,12 @@ import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.storage.*;
+import ru.yandex.practicum.filmorate.storage.index.FilmLeaderboard;
+import ru.yandex.practicum.filmorate.storage.index.TrendingFilmsCounter;
 
+import java.time.Duration;
 import java.util.*;
+import java.util.function.Consumer;
 
 //реализация сервиса для определения рейтинга фильмов
 @Slf4j
@@ -20,6 +24,8 @@ public class FilmServiceImpl implements FilmService {
     private final FilmStorage filmStorage;
     private final LikeStorage likeStorage;
     private final UserStorage userStorage;
+    private final FilmLeaderboard leaderboard;
+    private final TrendingFilmsCounter trendingCounter;
 
     private static final Integer HIT_LIST_SIZE = 10;
 
@@ -27,7 +33,10 @@ public class FilmServiceImpl implements FilmService {
     @Override
     public Film addFilm(Film film) {
 
-        return filmStorage.addFilm(film);
+        Film newFilm = filmStorage.addFilm(film);
+        leaderboard.addFilm(newFilm.getId());
+
+        return newFilm;
     }
 
     // обновление информации о фильме в FilmStorage
@@ -37,13 +46,31 @@ public class FilmServiceImpl implements FilmService {
         return filmStorage.updateFilm(film);
     }
 
-    // получение списка фильмов из FilmStorage
+    // получение списка всех фильмов из FilmStorage
     @Override
     public List<Film> listFilms() {
 
         return filmStorage.listFilms();
     }
 
+    // получение страницы списка фильмов, упорядоченного по id, из FilmStorage
+    @Override
+    public List<Film> listFilms(Integer afterId, int limit) {
+
+        List<Film> films = filmStorage.listFilmsPage(Optional.ofNullable(afterId).orElse(0), limit);
+
+        log.info("Количество фильмов на странице после id {}: {}", afterId, films.size());
+
+        return films;
+    }
+
+    // выгрузка всех фильмов из FilmStorage без сборки общего списка
+    @Override
+    public void exportFilms(Consumer<Film> action) {
+
+        filmStorage.processFilms(action);
+    }
+
     // получение фильма по идентификатору из FilmStorage
     @Override
     public Film getFilmById(Integer id) {
@@ -59,6 +86,7 @@ public class FilmServiceImpl implements FilmService {
         userStorage.checkUserId(userId);
 
         likeStorage.addLike(filmId, userId);
+        leaderboard.changeLikes(filmId, 1);
     }
 
     // возвращение копии объекта фильм с уменьшенным значением лайков из LikeStorage
@@ -69,6 +97,16 @@ public class FilmServiceImpl implements FilmService {
         userStorage.checkUserId(userId);
 
         likeStorage.deleteLike(filmId, userId);
+        leaderboard.changeLikes(filmId, -1);
+    }
+
+    // получение количества лайков у фильма - из счетчика, без загрузки фильма
+    @Override
+    public Long getFilmLikesCount(Integer filmId) {
+
+        filmStorage.checkFilmId(filmId);
+
+        return likeStorage.getFilmLikesTotalCount(filmId);
     }
 
     // получение списка наиболее популярных фильмов
@@ -78,13 +116,27 @@ public class FilmServiceImpl implements FilmService {
         // получение ограничения размера списка или его установка
         int limit = Optional.ofNullable(count).orElse(HIT_LIST_SIZE);
 
-        // возвращение отсортированного по популярности фильмов списка определенного размера
-        List<Film> mostPopularFilms = filmStorage.listMostPopularFilms(limit);
+        // возвращение отсортированного по популярности фильмов списка определенного размера из рейтинга в памяти
+        List<Film> mostPopularFilms = filmStorage.listFilmsByIds(leaderboard.listTopFilmIds(limit));
 
         log.info("Количество популярных фильмов по запросу: {}", mostPopularFilms.size());
 
         return mostPopularFilms;
     }
 
+    // получение списка фильмов, набравших больше всего лайков за последний период
+    @Override
+    public List<Film> listTrendingFilms(Duration window, Integer count) {
+
+        int limit = Optional.ofNullable(count).orElse(HIT_LIST_SIZE);
+
+        // счетчики лайков по часам хранятся в памяти, из базы загружаются только найденные фильмы
+        List<Film> trendingFilms = filmStorage.listFilmsByIds(trendingCounter.listTrendingFilmIds(window, limit));
+
+        log.info("Количество фильмов, набирающих популярность за {}: {}", window, trendingFilms.size());
+
+        return trendingFilms;
+    }
+
 
 }
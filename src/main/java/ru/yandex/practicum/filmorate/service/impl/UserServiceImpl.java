@@ -3,13 +3,16 @@ package ru.yandex.practicum.filmorate.service.impl;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exceptions.ObjectNotFoundException;
+import ru.yandex.practicum.filmorate.model.FeedEvent;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.UserService;
 import ru.yandex.practicum.filmorate.storage.FriendshipStorage;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.index.FriendFeedTimelines;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 
 // реализация сервиса для обработки запросов на создание / удаление / получение списков друзей пользователя
@@ -20,6 +23,11 @@ public class UserServiceImpl implements UserService {
 
     private final UserStorage userStorage;
     private final FriendshipStorage friendshipStorage;
+    private final FriendFeedTimelines feedTimelines;
+
+    private static final Integer SUGGESTIONS_SIZE = 10;
+    private static final int PATH_MAX_HOPS = 6; // максимальная длина цепочки друзей между пользователями
+    private static final Integer FEED_SIZE = 20;
 
     // добавление информации о пользователе
     @Override
@@ -35,13 +43,31 @@ public class UserServiceImpl implements UserService {
         return userStorage.updateUser(user);
     }
 
-    // получение списка пользователей
+    // получение списка всех пользователей
     @Override
     public List<User> listUsers() {
 
         return userStorage.listUsers();
     }
 
+    // получение страницы списка пользователей, упорядоченного по id
+    @Override
+    public List<User> listUsers(Long afterId, int limit) {
+
+        List<User> users = userStorage.listUsersPage(Optional.ofNullable(afterId).orElse(0L), limit);
+
+        log.info("Количество пользователей на странице после id {}: {}", afterId, users.size());
+
+        return users;
+    }
+
+    // выгрузка всех пользователей без сборки общего списка
+    @Override
+    public void exportUsers(Consumer<User> action) {
+
+        userStorage.processUsers(action);
+    }
+
     // получение пользователя по id
     @Override
     public User getUserById(Long id) {
@@ -97,6 +123,86 @@ public class UserServiceImpl implements UserService {
 
     }
 
+    // подсчет друзей пользователя - без загрузки пользователей
+    @Override
+    public Integer countUserFriends(Long userId) {
+
+        userStorage.checkUserId(userId);
+
+        return friendshipStorage.countUserFriends(userId);
+    }
+
+    // подсчет общих друзей пользователей - без загрузки пользователей
+    @Override
+    public Integer countCommonFriends(Long userId, Long otherId) {
+
+        userStorage.checkUserId(userId);
+        userStorage.checkUserId(otherId);
+
+        return friendshipStorage.countCommonFriends(userId, otherId);
+    }
+
+    // получение рекомендаций друзей - друзей друзей, упорядоченных по убыванию количества общих друзей
+    @Override
+    public List<User> listFriendSuggestions(Long userId, Integer count) {
+
+        userStorage.checkUserId(userId);
+
+        int limit = Optional.ofNullable(count).orElse(SUGGESTIONS_SIZE);
+        List<Long> suggestionsId = friendshipStorage.listFriendSuggestions(userId, limit);
+
+        // пользователи загружаются разом и расставляются в порядке рекомендаций
+        Map<Long, User> usersById = new HashMap<>();
+        userStorage.getUsersByIds(suggestionsId).forEach(user -> usersById.put(user.getId(), user));
+
+        List<User> suggestions = new ArrayList<>(suggestionsId.size());
+        suggestionsId.stream().map(usersById::get).filter(Objects::nonNull).forEach(suggestions::add);
+
+        log.info("Количество рекомендаций друзей для пользователя {}: {}", userId, suggestions.size());
+
+        return suggestions;
+    }
+
+    // получение кратчайшей цепочки друзей от пользователя до другого пользователя, не длиннее PATH_MAX_HOPS;
+    // поиск, превысивший ограничение на обход, завершается SearchLimitExceededException, а не отсутствием цепочки
+    @Override
+    public List<User> findFriendshipPath(Long userId, Long otherId) {
+
+        userStorage.checkUserId(userId);
+        userStorage.checkUserId(otherId);
+
+        List<Long> pathId = friendshipStorage.findFriendshipPath(userId, otherId, PATH_MAX_HOPS);
+
+        if (pathId.isEmpty()) {
+            throw new ObjectNotFoundException(String.format("Цепочка друзей длиной до %d от пользователя %d "
+                    + "до пользователя %d не найдена", PATH_MAX_HOPS, userId, otherId));
+        }
+
+        // пользователи загружаются разом и расставляются в порядке цепочки
+        Map<Long, User> usersById = new HashMap<>();
+        userStorage.getUsersByIds(pathId).forEach(user -> usersById.put(user.getId(), user));
+
+        List<User> path = new ArrayList<>(pathId.size());
+        pathId.stream().map(usersById::get).filter(Objects::nonNull).forEach(path::add);
+
+        log.info("Цепочка друзей от пользователя {} до пользователя {}: {} шагов", userId, otherId, path.size() - 1);
+
+        return path;
+    }
+
+    // получение ленты пользователя - последних лайков его друзей из заранее разложенной ленты, новые - первыми
+    @Override
+    public List<FeedEvent> listFeed(Long userId, Integer count) {
+
+        userStorage.checkUserId(userId);
+
+        List<FeedEvent> feed = feedTimelines.listFeed(userId, Optional.ofNullable(count).orElse(FEED_SIZE));
+
+        log.info("Количество записей в ленте пользователя {}: {}", userId, feed.size());
+
+        return feed;
+    }
+
     // получение информации о взаимности дружбы пользователей
     @Override
     public Boolean isFriendShipConfirmed(Long userId, Long friendId) {
@@ -104,12 +210,10 @@ public class UserServiceImpl implements UserService {
         return friendshipStorage.isFriendshipConfirmed(userId, friendId);
     }
 
-    // преобразование набора id в список пользователей
+    // преобразование набора id в список пользователей - все пользователи загружаются из хранилища разом
     private List<User> convertIdSetToUserList(Set<Long> set) {
 
-        return set.stream()
-                .map(userStorage::getUserById)
-                .collect(Collectors.toList());
+        return userStorage.getUsersByIds(set);
 
     }
 }
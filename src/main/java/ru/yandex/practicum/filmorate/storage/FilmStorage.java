@@ -3,6 +3,8 @@ package ru.yandex.practicum.filmorate.storage;
 import ru.yandex.practicum.filmorate.model.Film;
 
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 // хранение информации о фильмах
 
@@ -14,12 +16,18 @@ public interface FilmStorage {
 
     List<Film> listFilms(); // получение списка фильмов
 
+    List<Film> listFilmsPage(Integer afterId, int limit); // получение страницы фильмов с id больше afterId
+
+    void processFilms(Consumer<Film> action); // обработка всех фильмов по одному, без сборки общего списка
+
     Film getFilmById(Integer id); // получение фильма по идентификатору
 
     void updateFilmData(Film film); // сохранение новой или обновленной информации о фильме
 
-    List<Film> listMostPopularFilms(Integer count); // получение списка наиболее популярных фильмов
-
     void checkFilmId(Integer filmId); // проверка существования id фильма
 
+    List<Film> listFilmsByIds(List<Integer> ids); // получение фильмов по списку id в порядке следования в списке
+
+    Map<Integer, Long> getFilmsLikesCount(); // получение количества лайков у всех фильмов по id фильма
+
 }
@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import java.util.List;
 import java.util.Set;
 
 public interface FriendshipStorage {
@@ -14,6 +15,14 @@ public interface FriendshipStorage {
 
     Set<Long> listCommonFriends(Long userId, Long otherId); // получение списка общих друзей
 
+    int countUserFriends(Long userId); // подсчет друзей пользователя
+
+    int countCommonFriends(Long userId, Long otherId); // подсчет общих друзей
+
+    List<Long> listFriendSuggestions(Long userId, int limit); // получение id друзей друзей по числу общих друзей
+
+    List<Long> findFriendshipPath(Long userId, Long otherId, int maxHops); // получение кратчайшей цепочки друзей
+
     Boolean isFriendshipConfirmed(Long userId, Long friendId); // проверка взаимности дружбы
 
 }
@@ -2,7 +2,9 @@ package ru.yandex.practicum.filmorate.storage;
 
 import ru.yandex.practicum.filmorate.model.User;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 //хранение информации о пользователях
 
@@ -14,8 +16,14 @@ public interface UserStorage {
 
     List<User> listUsers(); // получение списка пользователей
 
+    List<User> listUsersPage(Long afterId, int limit); // получение страницы пользователей с id больше afterId
+
+    void processUsers(Consumer<User> action); // обработка всех пользователей по одному, без сборки общего списка
+
     User getUserById(Long id); // получение пользователя по идентификатору
 
+    List<User> getUsersByIds(Collection<Long> ids); // получение пользователей по списку id, отсортированных по id
+
     void updateUserProperties(User user); // сохранение новой или обновленной информации о пользователе
 
     void checkUserId(Long userId); // проверка существования id пользователя
@@ -0,0 +1,47 @@
+package ru.yandex.practicum.filmorate.storage.db;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+final class AfterCommit {
+
+    // изменение индексов в памяти только после фиксации транзакции - откаченное изменение базы данных
+    // не попадает в счетчики, ленты и граф дружбы
+
+    private AfterCommit() {
+    }
+
+    // выполнение действия после фиксации текущей транзакции (без транзакции - сразу)
+    static void afterCommit(Runnable action) {
+
+        afterCommit(action, () -> {
+        });
+    }
+
+    // выполнение действия после фиксации текущей транзакции и завершающего действия после ее фиксации или отката
+    static void afterCommit(Runnable action, Runnable completion) {
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            try {
+                action.run();
+            } finally {
+                completion.run();
+            }
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                completion.run();
+            }
+        });
+    }
+
+}
@@ -2,18 +2,28 @@ package ru.yandex.practicum.filmorate.storage.db;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Primary;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exceptions.ObjectNotFoundException;
 import ru.yandex.practicum.filmorate.model.*;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.index.ReferenceDataRegistry;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+import static ru.yandex.practicum.filmorate.storage.db.InListChunks.forEachChunk;
+
 @Slf4j
 @Repository
 @RequiredArgsConstructor
@@ -22,21 +32,37 @@ public class FilmDbStorage implements FilmStorage {
 
     // реализация сохранения и получения информации о фильмах в базе данных
 
+    // запрос фильмов с id жанров - по одной строке на каждый жанр фильма
+    // (названия рейтингов и жанров берутся из справочника в памяти)
+    private static final String SQL_FILMS_WITH_GENRES = "SELECT f.*, fg.genre_id "
+            + "FROM films AS f "
+            + "LEFT JOIN film_genres AS fg ON f.film_id = fg.film_id ";
+
     private final JdbcTemplate jdbcTemplate;
-    private final LikeDbStorage likeStorage;
-    private final RatingMpaDbStorage mpaStorage;
-    private final FilmGenreDbStorage filmGenresStorage;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final ReferenceDataRegistry referenceData;
+
+    // количество строк, получаемых из базы данных за одно обращение курсора при выгрузке всех фильмов
+    @Value("${filmorate.export.fetch-size:500}")
+    private int exportFetchSize;
+
+    // сборка списка фильмов из строк запроса, упорядоченных по id фильма (по одной строке на каждый жанр фильма)
+    private final ResultSetExtractor<List<Film>> filmsExtractor = this::extractFilms;
 
     // добавление информации о фильме
     @Override
+    @Transactional
     public Film addFilm(Film film) {
 
         // вставляем данные пользователя в базу данных и получаем сгенерированный id
+        // (счетчик лайков не передаем - новый фильм получает значение по умолчанию)
+        Map<String, Object> filmProperties = film.toMap();
         SimpleJdbcInsert filmInsertion = new SimpleJdbcInsert(jdbcTemplate)
                 .withTableName("films")
+                .usingColumns(filmProperties.keySet().toArray(new String[0]))
                 .usingGeneratedKeyColumns("film_id");
 
-        Integer filmId = filmInsertion.executeAndReturnKey(film.toMap()).intValue();
+        Integer filmId = filmInsertion.executeAndReturnKey(filmProperties).intValue();
 
         // присваиваем id и сохраняем полученные данные
         Film filmWithId = film.toBuilder().id(filmId).build();
@@ -65,6 +91,7 @@ public class FilmDbStorage implements FilmStorage {
 
     // обновление информации о фильме
     @Override
+    @Transactional
     public Film updateFilm(Film film) {
 
         checkFilmId(film.getId());
@@ -80,59 +107,67 @@ public class FilmDbStorage implements FilmStorage {
     @Override
     public List<Film> listFilms() {
 
-        String sqlFilm = "SELECT * FROM films";
+        // получение информации о фильмах, их рейтингах, жанрах и количестве лайков одним запросом
+        String sqlFilms = SQL_FILMS_WITH_GENRES + "ORDER BY f.film_id, fg.genre_id";
 
-        return jdbcTemplate.query(sqlFilm, (rs, rowNum) -> new Film(
-                rs.getInt("film_id"),
-                rs.getString("film_name"),
-                rs.getString("description"),
-                rs.getDate("release_date").toLocalDate(),
-                rs.getInt("duration"),
-                likeStorage.getFilmLikesTotalCount(rs.getInt("film_id")),
-                mpaStorage.getRatingMpaById(rs.getInt("rating_mpa_id")),
-                getFilmGenres(rs.getInt("film_id"))));
+        return jdbcTemplate.query(sqlFilms, filmsExtractor);
     }
 
-    // получение информации о фильме по id
+    // получение страницы фильмов, упорядоченных по id, начиная со следующего после afterId
     @Override
-    public Film getFilmById(Integer filmId) {
+    public List<Film> listFilmsPage(Integer afterId, int limit) {
+
+        // поиск по первичному ключу - объем запроса не зависит от размера таблицы
+        String sqlFilms = "SELECT f.* FROM films AS f WHERE f.film_id > ? ORDER BY f.film_id LIMIT ?";
+
+        List<Film> films = jdbcTemplate.query(sqlFilms, (rs, rowNum) -> mapRowToFilm(rs), afterId, limit);
+
+        // дополняем фильмы жанрами, полученными для всей страницы сразу
+        addFilmsGenres(films);
+
+        return films;
+    }
+
+    // обработка всех фильмов с жанрами одним запросом - строки читаются курсором порциями по exportFetchSize
+    @Override
+    public void processFilms(Consumer<Film> action) {
 
-        checkFilmId(filmId);
+        String sqlFilms = SQL_FILMS_WITH_GENRES + "ORDER BY f.film_id, fg.genre_id";
 
-        // получение информации из таблицы films
-        SqlRowSet sqlFilm = jdbcTemplate.queryForRowSet("select * from films where film_id = ?", filmId);
+        JdbcTemplate cursorTemplate = new JdbcTemplate(Objects.requireNonNull(jdbcTemplate.getDataSource()));
+        cursorTemplate.setFetchSize(exportFetchSize);
 
-        // получение информацию о жанрах фильма из таблицы genres
-        Set<FilmGenre> genres = getFilmGenres(filmId);
+        cursorTemplate.query(sqlFilms, (ResultSetExtractor<Void>) rs -> {
+            forEachFilm(rs, action);
+            return null;
+        });
+    }
+
+    // получение информации о фильме по id
+    @Override
+    public Film getFilmById(Integer filmId) {
 
-        // получение информации о рейтинге фильма из таблицы rating_mpa
-        Mpa mpa = getMpa(filmId);
+        // получение информации о фильме, его рейтинге, жанрах и количестве лайков одним запросом
+        String sqlFilm = SQL_FILMS_WITH_GENRES + "WHERE f.film_id = ? ORDER BY fg.genre_id";
 
-        // создаем объект Film на основе информации из всех необходимых таблиц
-        Film film;
-        if (sqlFilm.next()) {
-            film = new Film(
-                    sqlFilm.getInt("film_id"),
-                    sqlFilm.getString("film_name"),
-                    sqlFilm.getString("description"),
-                    Objects.requireNonNull(sqlFilm.getDate("release_date")).toLocalDate(),
-                    sqlFilm.getInt("duration"),
-                    likeStorage.getFilmLikesTotalCount(sqlFilm.getInt("film_id")),
-                    mpa,
-                    genres);
-        } else {
+        List<Film> films = jdbcTemplate.query(sqlFilm, filmsExtractor, filmId);
+
+        if (films == null || films.isEmpty()) {
 
             log.info("Фильм с идентификатором {} не найден.", filmId);
             throw new ObjectNotFoundException(String.format("Фильм с id: %d не найден", filmId));
 
         }
+
+        Film film = films.get(0);
         log.info("Найден фильм: {}", film);
         return film;
 
     }
 
-    // обновление информации о фильме
+    // обновление информации о фильме - данные фильма и его жанры сохраняются в одной транзакции
     @Override
+    @Transactional
     public void updateFilmData(Film film) {
 
         // обновление информации в таблице films
@@ -143,27 +178,44 @@ public class FilmDbStorage implements FilmStorage {
 
     }
 
-    // получение списка наиболее популярных фильмов с возможным ограничением размера списка
+    // получение фильмов по списку id в порядке следования в списке
     @Override
-    public List<Film> listMostPopularFilms(Integer limit) {
+    public List<Film> listFilmsByIds(List<Integer> filmIds) {
 
-        String query = "SELECT f.*, COUNT(l.user_id) AS quantity " +
-                "FROM films AS f " +
-                "LEFT JOIN likes AS l ON f.film_id = l.film_id " +
-                "GROUP BY f.film_id " +
-                "ORDER BY quantity DESC " +
-                "LIMIT ?";
+        String sqlFilms = "SELECT f.* "
+                + "FROM films AS f "
+                + "WHERE f.film_id IN (:ids)";
 
-        return jdbcTemplate.query(query, (rs, rowNum) -> new Film(
-                rs.getInt("film_id"),
-                rs.getString("film_name"),
-                rs.getString("description"),
-                rs.getDate("release_date").toLocalDate(),
-                rs.getInt("duration"),
-                likeStorage.getFilmLikesTotalCount(rs.getInt("film_id")),
-                mpaStorage.getRatingMpaById(rs.getInt("rating_mpa_id")),
-                getFilmGenres(rs.getInt("film_id"))), limit);
+        Map<Integer, Film> filmsById = new HashMap<>();
+
+        forEachChunk(filmIds, chunk -> namedJdbcTemplate.query(sqlFilms, Map.of("ids", chunk), rs -> {
+            Film film = mapRowToFilm(rs);
+            filmsById.put(film.getId(), film);
+        }));
+
+        List<Film> films = filmIds.stream()
+                .map(filmsById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+
+        // дополняем фильмы жанрами, полученными для всего списка сразу
+        addFilmsGenres(films);
+
+        return films;
+    }
 
+    // получение количества лайков у всех фильмов из счетчиков таблицы films
+    @Override
+    public Map<Integer, Long> getFilmsLikesCount() {
+
+        Map<Integer, Long> filmsLikes = new HashMap<>();
+
+        jdbcTemplate.query("SELECT film_id, likes_count FROM films",
+                rs -> {
+                    filmsLikes.put(rs.getInt("film_id"), rs.getLong("likes_count"));
+                });
+
+        return filmsLikes;
     }
 
     // обновление информации в таблице films
@@ -190,28 +242,23 @@ public class FilmDbStorage implements FilmStorage {
         // обновляем, либо удаляем данные в таблице
         if (genres != null && !genres.isEmpty()) {
 
-            // получаем информацию о новых id жанров фильма, сравниваем с текущими данными
-            Set<Integer> newGenresId = genres.stream().map(FilmGenre::getId).collect(Collectors.toSet());
-            Set<Integer> oldGenresId = new HashSet<>();
+            // получаем id новых жанров фильма
+            List<Integer> newGenresId = genres.stream()
+                    .map(FilmGenre::getId)
+                    .distinct()
+                    .sorted()
+                    .collect(Collectors.toList());
 
-            SqlRowSet oldGenres = jdbcTemplate
-                    .queryForRowSet("SELECT * FROM film_genres WHERE film_id = ?", film.getId());
+            // удаляем одним запросом жанры, которых нет в новом списке
+            String sqlQueryDel = "DELETE FROM film_genres WHERE film_id = :filmId AND genre_id NOT IN (:genreIds)";
+            namedJdbcTemplate.update(sqlQueryDel, Map.of("filmId", film.getId(), "genreIds", newGenresId));
 
-            while (oldGenres.next()) {
-                oldGenresId.add(oldGenres.getInt("genre_id"));
-            }
-
-            // выбираем данные для удаления
-            oldGenresId.removeAll(newGenresId);
-
-            // удаляем необходимые данные
-            String sqlQueryDel = "delete from film_genres where genre_id = ? and film_id = ?";
-            oldGenresId.forEach(genreId -> jdbcTemplate.update(sqlQueryDel, genreId, film.getId()));
-
-            // дополняем данные
-            String sqlQueryMerge = "merge into film_genres (film_id, genre_id) values (?, ?)";
-            genres.stream().map(FilmGenre::getId)
-                    .forEach(genreId -> jdbcTemplate.update(sqlQueryMerge, film.getId(), genreId));
+            // дополняем данные одним пакетом запросов
+            String sqlQueryMerge = "MERGE INTO film_genres (film_id, genre_id) VALUES (?, ?)";
+            jdbcTemplate.batchUpdate(sqlQueryMerge, newGenresId, newGenresId.size(), (ps, genreId) -> {
+                ps.setInt(1, film.getId());
+                ps.setInt(2, genreId);
+            });
 
             log.info("Обновлена информация о жанрах у фильма {}", film.getId());
 
@@ -228,53 +275,102 @@ public class FilmDbStorage implements FilmStorage {
 
     }
 
-    // получение жанров фильма из таблицы film_genres по id фильма и полную информацию о них из таблицы genres
-    private Set<FilmGenre> getFilmGenres(Integer filmId) {
+    // создание объектов фильмов из строк запроса с присоединенными рейтингом, жанрами и количеством лайков
+    private List<Film> extractFilms(ResultSet rs) throws SQLException {
+
+        List<Film> films = new ArrayList<>();
+        forEachFilm(rs, films::add);
+
+        return films;
+    }
+
+    // сборка фильмов из строк запроса, упорядоченных по id фильма (по одной строке на каждый жанр фильма);
+    // фильм передается на обработку, как только прочитаны все его строки
+    private void forEachFilm(ResultSet rs, Consumer<Film> action) throws SQLException {
 
-        SqlRowSet genreRows = jdbcTemplate
-                .queryForRowSet("SELECT genre_id FROM film_genres WHERE film_id = ?", filmId);
+        Film film = null;
 
-        Set<FilmGenre> genres = new TreeSet<>(Comparator.comparing(FilmGenre::getId));
+        while (rs.next()) {
 
-        while (genreRows.next()) {
-            // получение всей информации о жанре фильма
-            FilmGenre filmGenre =
-                    filmGenresStorage.getGenreById(genreRows.getInt("genre_id"));
-            genres.add(filmGenre);
+            // строки одного фильма идут подряд - новый объект создаем только при смене id
+            int filmId = rs.getInt("film_id");
+            if (film == null || film.getId() != filmId) {
+                if (film != null) {
+                    action.accept(film);
+                }
+                film = mapRowToFilm(rs);
+            }
 
+            // дополняем жанры фильма, если они есть
+            int genreId = rs.getInt("genre_id");
+            if (!rs.wasNull()) {
+                film.getGenres().add(getGenre(genreId));
+            }
         }
 
-        return genres;
+        if (film != null) {
+            action.accept(film);
+        }
     }
 
-    // получение информации о рейтинге фильма из таблицы rating_mpa по id фильма
-    private Mpa getMpa(Integer filmId) {
+    // создание объекта фильма из строки запроса без информации о жанрах
+    private Film mapRowToFilm(ResultSet rs) throws SQLException {
 
-        // запрос к таблице films для получения id рейтинга
-        SqlRowSet filmMpaRow = jdbcTemplate
-                .queryForRowSet("select rating_mpa_id from films where film_id = ?", filmId);
-        Integer ratingMpaId = null;
-        if (filmMpaRow.next()) {
-            ratingMpaId = filmMpaRow.getInt("rating_mpa_id");
-        }
+        // у фильма без рейтинга рейтинг не заполняется
+        int mpaId = rs.getInt("rating_mpa_id");
+        Mpa mpa = rs.wasNull() ? null : getMpa(mpaId);
+
+        return new Film(
+                rs.getInt("film_id"),
+                rs.getString("film_name"),
+                rs.getString("description"),
+                rs.getDate("release_date").toLocalDate(),
+                rs.getInt("duration"),
+                rs.getLong("likes_count"),
+                mpa,
+                new TreeSet<>(Comparator.comparing(FilmGenre::getId)));
+    }
 
-        // запрос к таблице rating_mpa для получения полной информации о рейтинге
-        SqlRowSet mpaRow = jdbcTemplate
-                .queryForRowSet("SELECT rating_mpa_name from rating_mpa where rating_mpa_id = ? ",
-                        ratingMpaId);
-        Mpa mpa = null;
-        if (mpaRow.next()) {
-            // создание объекта рейтинг
-            mpa = new Mpa(
-                    ratingMpaId,
-                    mpaRow.getString("rating_mpa_name"));
+    // дополнение списка фильмов информацией о жанрах
+    private void addFilmsGenres(List<Film> films) {
 
-        }
-        return mpa;
+        Map<Integer, Set<FilmGenre>> filmsGenres = getFilmsGenres(films.stream()
+                .map(Film::getId)
+                .collect(Collectors.toList()));
+
+        films.forEach(film -> film.getGenres().addAll(filmsGenres.getOrDefault(film.getId(), Set.of())));
     }
 
+    // получение жанров нескольких фильмов по списку id - по одному запросу на каждую часть списка
+    private Map<Integer, Set<FilmGenre>> getFilmsGenres(Collection<Integer> filmIds) {
 
-}
+        String sqlGenres = "SELECT film_id, genre_id FROM film_genres WHERE film_id IN (:ids)";
+
+        Map<Integer, Set<FilmGenre>> filmsGenres = new HashMap<>();
 
+        forEachChunk(filmIds, chunk -> namedJdbcTemplate.query(sqlGenres, Map.of("ids", chunk), rs -> {
+            filmsGenres.computeIfAbsent(rs.getInt("film_id"),
+                            id -> new TreeSet<>(Comparator.comparing(FilmGenre::getId)))
+                    .add(getGenre(rs.getInt("genre_id")));
+        }));
 
+        return filmsGenres;
+    }
+
+    // получение рейтинга из справочника без обращения к базе данных - справочник обновляется по расписанию,
+    // рейтинг, которого в нем еще нет, возвращается без названия
+    private Mpa getMpa(int mpaId) {
+
+        Mpa mpa = referenceData.getMpa(mpaId);
+        return mpa != null ? mpa : new Mpa(mpaId, null);
+    }
+
+    // получение жанра из справочника без обращения к базе данных
+    private FilmGenre getGenre(int genreId) {
 
+        FilmGenre genre = referenceData.getGenre(genreId);
+        return genre != null ? genre : new FilmGenre(genreId, null);
+    }
+
+
+}
@@ -3,12 +3,11 @@ package ru.yandex.practicum.filmorate.storage.db;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Primary;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.filmorate.exceptions.ObjectNotFoundException;
 import ru.yandex.practicum.filmorate.model.FilmGenre;
 import ru.yandex.practicum.filmorate.storage.FilmGenreStorage;
+import ru.yandex.practicum.filmorate.storage.index.ReferenceDataRegistry;
 
 import java.util.List;
 
@@ -19,19 +18,15 @@ import java.util.List;
 public class FilmGenreDbStorage implements FilmGenreStorage {
 
     // реализация получения информации о жанрах фильмов из базы данных
+    // (таблица genres загружается в справочник в памяти приложения)
 
-    private final JdbcTemplate jdbcTemplate;
+    private final ReferenceDataRegistry referenceData;
 
     // получение списка жанров фильмов из базы данных
     @Override
     public List<FilmGenre> listFilmGenres() {
 
-        String sql = "SELECT * FROM genres ORDER BY genre_id";
-
-        return jdbcTemplate.query(sql, (rs, rowNum) -> new FilmGenre(
-                rs.getInt("genre_id"),
-                rs.getString("genre_name"))
-        );
+        return referenceData.listGenres();
 
     }
 
@@ -39,14 +34,9 @@ public class FilmGenreDbStorage implements FilmGenreStorage {
     @Override
     public FilmGenre getGenreById(Integer genreId) {
 
-        SqlRowSet sqlGenre = jdbcTemplate.queryForRowSet("SELECT * FROM genres where genre_id = ?", genreId);
-
-        if (sqlGenre.next()) {
+        FilmGenre filmGenre = referenceData.getGenre(genreId);
 
-            FilmGenre filmGenre = new FilmGenre(
-                    sqlGenre.getInt("genre_id"),
-                    sqlGenre.getString("genre_name")
-            );
+        if (filmGenre != null) {
 
             log.info("Найден жанр: {} {}", genreId, filmGenre.getName());
             return filmGenre;
@@ -3,12 +3,22 @@ package ru.yandex.practicum.filmorate.storage.db;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Primary;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.storage.FriendshipStorage;
+import ru.yandex.practicum.filmorate.storage.index.FriendGraphIndex;
 
+import javax.annotation.PostConstruct;
 import java.util.*;
+import java.util.stream.Collectors;
+
+import static ru.yandex.practicum.filmorate.storage.db.AfterCommit.afterCommit;
+import static ru.yandex.practicum.filmorate.storage.db.InListChunks.forEachChunk;
 
 @Slf4j
 @RequiredArgsConstructor
@@ -19,47 +29,133 @@ public class FriendshipDbStorage implements FriendshipStorage {
     // реализация сохранения и получения информации о друзьях пользователей в базе данных
 
     private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final FriendGraphIndex friendGraph;
+
+    // количество попыток добавления заявки - если строку, блокировку которой ждал MERGE, другое изменение пары
+    // изменило или удалило, MERGE завершается ошибкой одновременного изменения; повтор видит уже
+    // зафиксированное состояние строки (при частых изменениях одной пары нужно несколько попыток)
+    private static final int MERGE_ATTEMPTS = 10;
+
+    // построение графа дружбы в памяти при запуске приложения - один проход по таблице в порядке первичного ключа
+    @PostConstruct
+    public void loadFriendGraph() {
+
+        Map<Long, long[]> friendsByUser = new HashMap<>();
+
+        String sqlFriendships = "SELECT initiator_id, recipient_id FROM friendship ORDER BY initiator_id, recipient_id";
+
+        jdbcTemplate.query(sqlFriendships, (ResultSetExtractor<Void>) rs -> {
+
+            long[] userFriends = new long[16];
+            int size = 0;
+            long userId = 0;
+
+            while (rs.next()) {
+
+                // строки одного пользователя идут подряд по возрастанию id друга - сохраняем их при смене пользователя
+                long initiatorId = rs.getLong("initiator_id");
+                if (size > 0 && initiatorId != userId) {
+                    friendsByUser.put(userId, Arrays.copyOf(userFriends, size));
+                    size = 0;
+                }
+                userId = initiatorId;
+
+                if (size == userFriends.length) {
+                    userFriends = Arrays.copyOf(userFriends, size * 2);
+                }
+                userFriends[size++] = rs.getLong("recipient_id");
+            }
+
+            if (size > 0) {
+                friendsByUser.put(userId, Arrays.copyOf(userFriends, size));
+            }
+            return null;
+        });
+
+        // граф заменяется целиком вместе с обратными связями
+        friendGraph.load(friendsByUser);
+    }
 
     @Override
+    @Transactional
     public void addFriend(Long userId, Long friendId) {
 
-        String sqlQueryAddFriend = "MERGE INTO friendship (initiator_id, recipient_id, is_confirmed) VALUES (?, ?, ?)";
+        // изменения пары берут блокировки строк в одном порядке - сначала строка инициатора с меньшим id,
+        // поэтому встречные изменения пары ждут друг друга на этой строке, а не взаимно
+        boolean isMutual;
+        if (userId < friendId) {
+            mergeFriendRequest(userId, friendId);
+            isMutual = confirmFriendRequest(friendId, userId, true);
+        } else {
+            isMutual = confirmFriendRequest(friendId, userId, true);
+            mergeFriendRequest(userId, friendId);
+        }
 
-        // проверяем наличие заявки на дружбу с пользователем у потенциального друга
-        if (isFriendshipMutual(userId, friendId)) {
-            // добавляем подтверждение дружбы обоим пользователям
-            jdbcTemplate.update(sqlQueryAddFriend, userId, friendId, true);
-            jdbcTemplate.update(sqlQueryAddFriend, friendId, userId, true);
+        if (isMutual) {
             log.info("Пользователи {} и {} дружат взаимно", userId, friendId);
-
         } else {
-            // добавляем пользователю заявку на дружбу
-            jdbcTemplate.update(sqlQueryAddFriend, userId, friendId, false);
             log.info("Пользователь {} подал заявку на дружбу с {}", userId, friendId);
         }
 
+        // друг добавляется в граф дружбы в памяти после фиксации транзакции - откаченное изменение в граф не попадает
+        afterCommit(() -> friendGraph.addFriend(userId, friendId));
     }
 
     @Override
+    @Transactional
     public void deleteFriend(Long userId, Long friendId) {
 
-        // удаляем у пользователя заявку на дружбу
-        String sqlQueryDeleteFriend =
-                "DELETE FROM friendship WHERE initiator_id = ? AND recipient_id = ?";
-        jdbcTemplate.update(sqlQueryDeleteFriend, userId, friendId);
-        log.info("Пользователь {} удалил заявку на дружбу с {}", userId, friendId);
-
-        // в случае наличия заявки на дружбы у друга изменяем статус заявки
-        if (isFriendshipMutual(userId, friendId)) {
+        boolean wasMutual;
+        if (userId < friendId) {
+            deleteFriendRequest(userId, friendId);
+            wasMutual = confirmFriendRequest(friendId, userId, false);
+        } else {
+            wasMutual = confirmFriendRequest(friendId, userId, false);
+            deleteFriendRequest(userId, friendId);
+        }
 
-            String sqlQueryChangeStatus =
-                    "MERGE INTO friendship (initiator_id, recipient_id, is_confirmed) VALUES (?, ?, ?)";
-            jdbcTemplate.update(sqlQueryChangeStatus, friendId, userId, false);
+        log.info("Пользователь {} удалил заявку на дружбу с {}", userId, friendId);
+        if (wasMutual) {
             log.info("Пользователь {} удалил дружбу с {}", userId, friendId);
+        }
+
+        // друг удаляется из графа дружбы в памяти после фиксации транзакции
+        afterCommit(() -> friendGraph.removeFriend(userId, friendId));
+    }
 
+    // добавление пользователю заявки на дружбу, подтвержденной при наличии встречной
+    private void mergeFriendRequest(Long userId, Long friendId) {
+
+        String sqlQueryAddFriend = "MERGE INTO friendship (initiator_id, recipient_id, is_confirmed) "
+                + "KEY (initiator_id, recipient_id) "
+                + "SELECT ?, ?, EXISTS (SELECT 1 FROM friendship WHERE initiator_id = ? AND recipient_id = ?)";
+        for (int attempt = 1; ; attempt++) {
+            try {
+                jdbcTemplate.update(sqlQueryAddFriend, userId, friendId, friendId, userId);
+                return;
+            } catch (ConcurrencyFailureException e) {
+                if (attempt == MERGE_ATTEMPTS) {
+                    throw e;
+                }
+            }
         }
     }
 
+    // удаление у пользователя заявки на дружбу
+    private void deleteFriendRequest(Long userId, Long friendId) {
+
+        jdbcTemplate.update("DELETE FROM friendship WHERE initiator_id = ? AND recipient_id = ?", userId, friendId);
+    }
+
+    // подтверждение или снятие подтверждения заявки на дружбу; возвращает, есть ли такая заявка
+    private boolean confirmFriendRequest(Long userId, Long friendId, boolean isConfirmed) {
+
+        String sqlQueryChangeStatus = "UPDATE friendship SET is_confirmed = ? "
+                + "WHERE initiator_id = ? AND recipient_id = ?";
+        return jdbcTemplate.update(sqlQueryChangeStatus, isConfirmed, userId, friendId) > 0;
+    }
+
     // получение списка друзей пользователя
     @Override
     public Set<Long> listUserFriends(Long userId) {
@@ -77,19 +173,31 @@ public class FriendshipDbStorage implements FriendshipStorage {
         return friends;
     }
 
-    // получение списка общих друзей
+    // получение списков друзей нескольких пользователей - по одному запросу на каждую часть списка id
+    public Map<Long, Set<Long>> listUsersFriends(Collection<Long> userIds) {
+
+        String sqlFriends = "SELECT initiator_id, recipient_id FROM friendship WHERE initiator_id IN (:ids)";
+
+        Map<Long, Set<Long>> usersFriends = new HashMap<>();
+
+        forEachChunk(userIds, chunk -> namedJdbcTemplate.query(sqlFriends, Map.of("ids", chunk), rs -> {
+            usersFriends.computeIfAbsent(rs.getLong("initiator_id"), id -> new HashSet<>())
+                    .add(rs.getLong("recipient_id"));
+        }));
+
+        return usersFriends;
+    }
+
+    // получение списка общих друзей - пересечением отсортированных списков друзей в графе дружбы в памяти
     @Override
     public Set<Long> listCommonFriends(Long userId, Long otherId) {
 
-        SqlRowSet sqlQueryListCommonFriends = jdbcTemplate
-                .queryForRowSet("SELECT f1.recipient_id FROM friendship AS f1 JOIN friendship AS f2 "
-                        + "ON f1.recipient_id = f2.recipient_id "
-                        + "WHERE f1.initiator_id = ? AND f2.initiator_id = ?", userId, otherId);
+        long[] commonFriends = friendGraph.listCommonFriends(userId, otherId);
 
-        Set<Long> friends = new HashSet<>();
+        Set<Long> friends = new LinkedHashSet<>();
 
-        while (sqlQueryListCommonFriends.next()) {
-            friends.add(sqlQueryListCommonFriends.getLong("recipient_id"));
+        for (long friendId : commonFriends) {
+            friends.add(friendId);
         }
 
         log.info("Общих друзей в списке у пользователей {} и {} : {}", userId, otherId, friends.size());
@@ -98,30 +206,45 @@ public class FriendshipDbStorage implements FriendshipStorage {
 
     }
 
-    // получение информации о взаимном подтверждении дружбы двумя пользователями
+    // подсчет друзей пользователя - по длине списка друзей в графе дружбы в памяти
     @Override
-    public Boolean isFriendshipConfirmed(Long userId, Long friendId) {
+    public int countUserFriends(Long userId) {
 
-        SqlRowSet sqlQueryIsFriendshipConfirmed = jdbcTemplate
-                .queryForRowSet("SELECT is_confirmed FROM friendship "
-                        + "WHERE initiator_id = ? AND recipient_id = ?", userId, friendId);
+        return friendGraph.getFriends(userId).length;
+    }
 
-        boolean status = false;
+    // подсчет общих друзей - пересечением списков друзей в графе без построения списка общих друзей
+    @Override
+    public int countCommonFriends(Long userId, Long otherId) {
 
-        if (sqlQueryIsFriendshipConfirmed.next()) {
-            status = sqlQueryIsFriendshipConfirmed.getBoolean("is_confirmed");
-        }
+        return friendGraph.countCommonFriends(userId, otherId);
+    }
 
-        return status;
+    // поиск кратчайшей цепочки друзей между пользователями - двунаправленным обходом графа дружбы в памяти
+    @Override
+    public List<Long> findFriendshipPath(Long userId, Long otherId, int maxHops) {
+
+        return Arrays.stream(friendGraph.findPath(userId, otherId, maxHops)).boxed().collect(Collectors.toList());
     }
 
-    // проверка наличия заявки на дружбу от потенциального друга пользователя
-    private Boolean isFriendshipMutual(Long userId, Long friendId) {
+    // получение рекомендаций друзей - обходом графа дружбы в памяти на два шага от пользователя
+    @Override
+    public List<Long> listFriendSuggestions(Long userId, int limit) {
+
+        return friendGraph.listFriendSuggestions(userId, limit);
+    }
+
+    // получение информации о взаимном подтверждении дружбы двумя пользователями
+    @Override
+    public Boolean isFriendshipConfirmed(Long userId, Long friendId) {
 
-        SqlRowSet sqlQueryIsFriendshipMutual = jdbcTemplate.queryForRowSet("SELECT * FROM friendship "
-                + "WHERE initiator_id = ? AND recipient_id = ?", friendId, userId);
+        // дружба взаимна, если есть обе заявки: одновременно поданные встречные заявки не видят друг друга
+        // (строки, которой еще нет, нечем заблокировать), и флаг is_confirmed у них может остаться неподтвержденным
+        Integer requests = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM friendship "
+                        + "WHERE (initiator_id = ? AND recipient_id = ?) OR (initiator_id = ? AND recipient_id = ?)",
+                Integer.class, userId, friendId, friendId, userId);
 
-        return sqlQueryIsFriendshipMutual.next();
+        return requests != null && requests == 2;
     }
 
 
@@ -0,0 +1,28 @@
+package ru.yandex.practicum.filmorate.storage.db;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+final class InListChunks {
+
+    // разбиение списков id для запросов с условием IN на части допустимого размера
+
+    // максимальное количество id в одном запросе с условием IN
+    static final int IN_LIST_CHUNK_SIZE = 1000;
+
+    private InListChunks() {
+    }
+
+    // выполнение действия для частей списка id, не превышающих допустимого размера условия IN
+    static <T> void forEachChunk(Collection<T> ids, Consumer<List<T>> action) {
+
+        List<T> idList = new ArrayList<>(ids);
+
+        for (int from = 0; from < idList.size(); from += IN_LIST_CHUNK_SIZE) {
+            action.accept(idList.subList(from, Math.min(from + IN_LIST_CHUNK_SIZE, idList.size())));
+        }
+    }
+
+}
@@ -3,10 +3,21 @@ package ru.yandex.practicum.filmorate.storage.db;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Primary;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.storage.LikeStorage;
+import ru.yandex.practicum.filmorate.storage.index.FriendFeedTimelines;
+import ru.yandex.practicum.filmorate.storage.index.TrendingFilmsCounter;
+
+import javax.annotation.PostConstruct;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+
+import static ru.yandex.practicum.filmorate.storage.db.AfterCommit.afterCommit;
 
 @Slf4j
 @RequiredArgsConstructor
@@ -16,70 +27,133 @@ public class LikeDbStorage implements LikeStorage {
 
     // реализация хранения информации о лайках в базе данных
     private final JdbcTemplate jdbcTemplate;
+    private final TrendingFilmsCounter trendingCounter;
+    private final FriendFeedTimelines feedTimelines;
+
+    // восстановление данных о лайках в памяти при запуске приложения
+    @PostConstruct
+    public void init() {
+
+        loadRecentLikes();
+        loadFriendFeeds();
+    }
+
+    // восстановление счетчиков лайков за последний период
+    public void loadRecentLikes() {
+
+        trendingCounter.clear();
+
+        Timestamp since = Timestamp.from(Instant.now().minus(TrendingFilmsCounter.MAX_WINDOW));
+
+        jdbcTemplate.query("SELECT film_id, liked_at FROM likes WHERE liked_at >= ?", rs -> {
+            trendingCounter.registerLike(rs.getInt("film_id"), rs.getTimestamp("liked_at").toInstant());
+        }, since);
+    }
+
+    // восстановление лент пользователей - лайков их друзей за последний период в порядке возрастания времени
+    public void loadFriendFeeds() {
+
+        feedTimelines.clear();
+
+        Timestamp since = Timestamp.from(Instant.now().minus(FriendFeedTimelines.RESTORE_WINDOW));
+
+        String sqlFriendsLikes = "SELECT fr.initiator_id, l.film_id, l.user_id, l.liked_at "
+                + "FROM likes AS l "
+                + "JOIN friendship AS fr ON fr.recipient_id = l.user_id "
+                + "WHERE l.liked_at >= ? "
+                + "ORDER BY l.liked_at";
+
+        jdbcTemplate.query(sqlFriendsLikes, rs -> {
+            feedTimelines.append(rs.getLong("initiator_id"), rs.getInt("film_id"), rs.getLong("user_id"),
+                    rs.getTimestamp("liked_at").toInstant());
+        }, since);
+    }
 
     @Override
+    @Transactional
     public void addLike(Integer filmId, Long userId) {
 
-        // получаем информацию о наличии лайков в базе данных
-        SqlRowSet sqlLikesQuantity = jdbcTemplate.queryForRowSet(
-                "SELECT * FROM likes WHERE film_id = ? AND user_id = ?", filmId, userId);
+        Instant likedAt = Instant.now();
+
+        try {
+
+            // ставим лайк фильму
+            String sqlQueryAddLike = "INSERT INTO likes (film_id, user_id, liked_at) VALUES (?, ?, ?)";
+            jdbcTemplate.update(sqlQueryAddLike, filmId, userId, Timestamp.from(likedAt));
 
-        if (sqlLikesQuantity.next()) {
+        } catch (DuplicateKeyException e) {
 
             // выбрасываем исключение при попытке поставить повторный лайк
             throw new RuntimeException("Вы уже ставили лайк этому фильму");
 
-        } else {
+        }
 
-            // ставим лайк фильму
-            String sqlQueryAddFriend = "INSERT INTO likes (film_id, user_id) VALUES (?, ?)";
-            jdbcTemplate.update(sqlQueryAddFriend, filmId, userId);
+        // увеличиваем счетчик лайков фильма в той же транзакции
+        updateFilmLikesCount(filmId, 1);
 
-            log.info("Пользователь {} поставил лайк фильму {}", userId, filmId);
+        // счетчик за период и ленты друзей меняются только после фиксации лайка в базе данных
+        afterCommit(() -> {
+            trendingCounter.registerLike(filmId, likedAt);
+            feedTimelines.publishLike(filmId, userId, likedAt);
+        });
 
-        }
+        log.info("Пользователь {} поставил лайк фильму {}", userId, filmId);
 
     }
 
     @Override
+    @Transactional
     public void deleteLike(Integer filmId, Long userId) {
 
-        // получаем информацию о наличии лайков в базе данных
-        SqlRowSet sqlLikesQuantity = jdbcTemplate.queryForRowSet(
-                "SELECT * FROM likes WHERE film_id = ? AND user_id = ?", filmId, userId);
+        // удаляем лайк у фильма, получая время, когда он был поставлен
+        String sqlQueryDeleteLike = "SELECT liked_at FROM OLD TABLE "
+                + "(DELETE FROM likes WHERE film_id = ? AND user_id = ?)";
+
+        List<Timestamp> deletedLikes = jdbcTemplate.query(sqlQueryDeleteLike,
+                (rs, rowNum) -> rs.getTimestamp("liked_at"), filmId, userId);
 
-        if (!sqlLikesQuantity.next()) {
+        if (deletedLikes.isEmpty()) {
 
             // выбрасываем исключение при попытке удалить несуществующий лайк
             throw new RuntimeException("Вы не ставили лайк этому фильму");
 
-        } else {
-            // удаляем лайк у фильма
-            String sqlQueryAddFriend = "DELETE FROM likes WHERE film_id = ? AND user_id = ?";
-
-            jdbcTemplate.update(sqlQueryAddFriend, filmId, userId);
+        }
 
-            log.info("Пользователь {} удалил лайк у фильма {}", userId, filmId);
+        // уменьшаем счетчик лайков фильма в той же транзакции
+        updateFilmLikesCount(filmId, -1);
 
+        Timestamp likedAt = deletedLikes.get(0);
+        if (likedAt != null) {
+            afterCommit(() -> trendingCounter.removeLike(filmId, likedAt.toInstant()));
         }
+        afterCommit(() -> feedTimelines.removeLike(filmId, userId));
+
+        log.info("Пользователь {} удалил лайк у фильма {}", userId, filmId);
 
     }
 
-    // подсчет лайков определенному фильму от всех пользователей
+    // получение количества лайков определенному фильму от всех пользователей из счетчика в таблице films
+    @Override
     public Long getFilmLikesTotalCount(Integer filmId) {
 
         SqlRowSet sqlLikes = jdbcTemplate
-                .queryForRowSet("SELECT COUNT(l.user_id) as quantity FROM likes AS l WHERE film_id = ?", filmId);
+                .queryForRowSet("SELECT likes_count FROM films WHERE film_id = ?", filmId);
 
         long likes = 0L;
 
         if (sqlLikes.next()) {
-            likes = sqlLikes.getLong("quantity");
+            likes = sqlLikes.getLong("likes_count");
         }
 
         return likes;
 
     }
 
+    // изменение счетчика лайков фильма
+    private void updateFilmLikesCount(Integer filmId, int delta) {
+
+        jdbcTemplate.update("UPDATE films SET likes_count = likes_count + ? WHERE film_id = ?", delta, filmId);
+    }
+
 
 }
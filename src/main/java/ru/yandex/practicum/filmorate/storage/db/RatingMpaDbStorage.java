@@ -3,12 +3,11 @@ package ru.yandex.practicum.filmorate.storage.db;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Primary;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.filmorate.exceptions.ObjectNotFoundException;
 import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.storage.RatingMpaStorage;
+import ru.yandex.practicum.filmorate.storage.index.ReferenceDataRegistry;
 
 import java.util.List;
 
@@ -19,18 +18,15 @@ import java.util.List;
 public class RatingMpaDbStorage implements RatingMpaStorage {
 
     // реализация получения информации о рейтингах фильмов из базы данных
+    // (таблица rating_mpa загружается в справочник в памяти приложения)
 
-    private final JdbcTemplate jdbcTemplate;
+    private final ReferenceDataRegistry referenceData;
 
     // получение списка возможных рейтингов отсортированных по id
     @Override
     public List<Mpa> listRatingMpa() {
 
-        String sql = "SELECT * FROM rating_mpa ORDER BY rating_mpa_id";
-
-        return jdbcTemplate.query(sql, (rs, rowNum) -> new Mpa(
-                rs.getInt("rating_mpa_id"),
-                rs.getString("rating_mpa_name")));
+        return referenceData.listMpa();
 
     }
 
@@ -38,14 +34,10 @@ public class RatingMpaDbStorage implements RatingMpaStorage {
     @Override
     public Mpa getRatingMpaById(Integer ratingMpaId) {
 
-        SqlRowSet sqlRatingQuery = jdbcTemplate
-                .queryForRowSet("SELECT * FROM rating_mpa WHERE rating_mpa_id = ?", ratingMpaId);
+        Mpa mpa = referenceData.getMpa(ratingMpaId);
 
-        if (sqlRatingQuery.next()) {
+        if (mpa != null) {
 
-            Mpa mpa = new Mpa(
-                    sqlRatingQuery.getInt("rating_mpa_id"),
-                    sqlRatingQuery.getString("rating_mpa_name"));
             log.info("Найден рейтинг: {}", mpa);
             return mpa;
 
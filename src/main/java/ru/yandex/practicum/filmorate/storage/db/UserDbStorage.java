@@ -2,8 +2,11 @@ package ru.yandex.practicum.filmorate.storage.db;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Primary;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.jdbc.support.rowset.SqlRowSet;
 
@@ -13,7 +16,12 @@ import ru.yandex.practicum.filmorate.exceptions.ObjectNotFoundException;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.*;
+import java.util.function.Consumer;
+
+import static ru.yandex.practicum.filmorate.storage.db.InListChunks.forEachChunk;
 
 @Slf4j
 @Repository
@@ -23,8 +31,19 @@ public class UserDbStorage implements UserStorage {
 
     // реализация сохранения и получения информации о пользователях в базе данных
 
+    // запрос всех пользователей с id их друзей, упорядоченный по id пользователя -
+    // по одной строке на каждого друга пользователя
+    private static final String SQL_USERS_WITH_FRIENDS = "SELECT u.*, f.recipient_id FROM users AS u "
+            + "LEFT JOIN friendship AS f ON u.user_id = f.initiator_id "
+            + "ORDER BY u.user_id";
+
     private final FriendshipDbStorage friendDbStorage;
     private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    // количество строк, получаемых из базы данных за одно обращение курсора при выгрузке всех пользователей
+    @Value("${filmorate.export.fetch-size:500}")
+    private int exportFetchSize;
 
     // добавление нового пользователя
     @Override
@@ -77,20 +96,48 @@ public class UserDbStorage implements UserStorage {
 
     }
 
+    // получение списка пользователей с друзьями одним запросом за один проход по таблицам users и friendship
     @Override
     public List<User> listUsers() {
 
-        // запрашиваем данные всех пользователей
-        String sqlUser = "SELECT * FROM users";
-
         // обрабатываем запрос и возвращаем список объектов пользователей
-        return jdbcTemplate.query(sqlUser, (rs, rowNum) -> new User(
-                rs.getLong("user_id"),
-                rs.getString("email"),
-                rs.getString("user_name"),
-                rs.getString("login"),
-                rs.getDate("birthday").toLocalDate(),
-                friendDbStorage.listUserFriends(rs.getLong("user_id"))));
+        return jdbcTemplate.query(SQL_USERS_WITH_FRIENDS, rs -> {
+
+            List<User> users = new ArrayList<>();
+            forEachUser(rs, users::add);
+            return users;
+        });
+    }
+
+    // получение страницы пользователей с друзьями, упорядоченных по id, начиная со следующего после afterId, -
+    // одним запросом за один проход: страница выбирается по первичному ключу, друзья присоединяются только к ней
+    @Override
+    public List<User> listUsersPage(Long afterId, int limit) {
+
+        String sqlUsers = "SELECT u.*, f.recipient_id "
+                + "FROM (SELECT * FROM users WHERE user_id > ? ORDER BY user_id LIMIT ?) AS u "
+                + "LEFT JOIN friendship AS f ON u.user_id = f.initiator_id "
+                + "ORDER BY u.user_id";
+
+        return jdbcTemplate.query(sqlUsers, rs -> {
+
+            List<User> users = new ArrayList<>(limit);
+            forEachUser(rs, users::add);
+            return users;
+        }, afterId, limit);
+    }
+
+    // обработка всех пользователей с id друзей одним запросом - строки читаются курсором порциями по exportFetchSize
+    @Override
+    public void processUsers(Consumer<User> action) {
+
+        JdbcTemplate cursorTemplate = new JdbcTemplate(Objects.requireNonNull(jdbcTemplate.getDataSource()));
+        cursorTemplate.setFetchSize(exportFetchSize);
+
+        cursorTemplate.query(SQL_USERS_WITH_FRIENDS, (ResultSetExtractor<Void>) rs -> {
+            forEachUser(rs, action);
+            return null;
+        });
     }
 
     @Override
@@ -121,6 +168,27 @@ public class UserDbStorage implements UserStorage {
     }
 
 
+    // получение пользователей по списку id, отсортированных по id, - запрос пользователей и запрос их друзей
+    @Override
+    public List<User> getUsersByIds(Collection<Long> userIds) {
+
+        String sqlUsers = "SELECT * FROM users WHERE user_id IN (:ids)";
+
+        Set<Long> ids = new HashSet<>(userIds);
+        Map<Long, Set<Long>> usersFriends = friendDbStorage.listUsersFriends(ids);
+        List<User> users = new ArrayList<>(ids.size());
+
+        forEachChunk(ids, chunk -> namedJdbcTemplate.query(sqlUsers, Map.of("ids", chunk), rs -> {
+            users.add(mapRowToUser(rs, usersFriends.getOrDefault(rs.getLong("user_id"), new HashSet<>())));
+        }));
+
+        users.sort(Comparator.comparing(User::getId));
+
+        log.info("Найдено пользователей по списку id: {}", users.size());
+
+        return users;
+    }
+
     // обновление данных о пользователе в таблице users
     @Override
     public void updateUserProperties(User user) {
@@ -139,6 +207,46 @@ public class UserDbStorage implements UserStorage {
                 user.getId());
     }
 
+    // сборка пользователей из строк запроса, упорядоченных по id пользователя (по одной строке на каждого друга);
+    // пользователь передается на обработку, как только прочитаны все его строки
+    private void forEachUser(ResultSet rs, Consumer<User> action) throws SQLException {
+
+        User user = null;
+
+        while (rs.next()) {
+
+            // строки одного пользователя идут подряд - новый объект создаем только при смене id
+            long userId = rs.getLong("user_id");
+            if (user == null || user.getId() != userId) {
+                if (user != null) {
+                    action.accept(user);
+                }
+                user = mapRowToUser(rs, new HashSet<>());
+            }
+
+            long friendId = rs.getLong("recipient_id");
+            if (!rs.wasNull()) {
+                user.getFriends().add(friendId);
+            }
+        }
+
+        if (user != null) {
+            action.accept(user);
+        }
+    }
+
+    // создание объекта пользователя из строки запроса с заданным списком друзей
+    private User mapRowToUser(ResultSet rs, Set<Long> friends) throws SQLException {
+
+        return new User(
+                rs.getLong("user_id"),
+                rs.getString("email"),
+                rs.getString("user_name"),
+                rs.getString("login"),
+                rs.getDate("birthday").toLocalDate(),
+                friends);
+    }
+
 
 }
 
@@ -0,0 +1,95 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FilmLeaderboard {
+
+    // рейтинг фильмов по количеству лайков, хранящийся в памяти приложения
+
+    private final FilmStorage filmStorage;
+
+    // фильмы, упорядоченные по убыванию количества лайков, при равенстве - по возрастанию id
+    private final NavigableSet<FilmScore> ranking = new TreeSet<>();
+
+    // текущее количество лайков у каждого фильма рейтинга - <id фильма, количество лайков>
+    private final Map<Integer, Long> likes = new HashMap<>();
+
+    // построение рейтинга по данным хранилища при запуске приложения
+    @PostConstruct
+    public synchronized void rebuild() {
+
+        ranking.clear();
+        likes.clear();
+
+        filmStorage.getFilmsLikesCount().forEach(this::putFilm);
+
+        log.info("Построен рейтинг популярности фильмов, количество фильмов: {}", likes.size());
+    }
+
+    // добавление нового фильма в рейтинг
+    public synchronized void addFilm(Integer filmId) {
+
+        if (!likes.containsKey(filmId)) {
+            putFilm(filmId, 0L);
+        }
+    }
+
+    // изменение количества лайков у фильма - O(log n)
+    public synchronized void changeLikes(Integer filmId, long delta) {
+
+        Long current = likes.get(filmId);
+        long currentLikes = (current == null) ? 0L : current;
+
+        if (current != null) {
+            ranking.remove(new FilmScore(currentLikes, filmId));
+        }
+
+        putFilm(filmId, Math.max(0L, currentLikes + delta));
+    }
+
+    // получение id наиболее популярных фильмов - O(log n + limit)
+    public synchronized List<Integer> listTopFilmIds(int limit) {
+
+        List<Integer> filmIds = new ArrayList<>(Math.max(0, Math.min(limit, likes.size())));
+        Iterator<FilmScore> iterator = ranking.iterator();
+
+        while (iterator.hasNext() && filmIds.size() < limit) {
+            filmIds.add(iterator.next().getFilmId());
+        }
+
+        return filmIds;
+    }
+
+    // сохранение фильма в рейтинге с заданным количеством лайков
+    private void putFilm(Integer filmId, Long filmLikes) {
+
+        likes.put(filmId, filmLikes);
+        ranking.add(new FilmScore(filmLikes, filmId));
+    }
+
+    // позиция фильма в рейтинге - количество лайков и id фильма
+    @Value
+    private static class FilmScore implements Comparable<FilmScore> {
+
+        long likes;
+        int filmId;
+
+        @Override
+        public int compareTo(FilmScore other) {
+
+            int byLikes = Long.compare(other.likes, likes);
+            return (byLikes != 0) ? byLikes : Integer.compare(filmId, other.filmId);
+        }
+    }
+
+}
@@ -0,0 +1,207 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.FeedEvent;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongPredicate;
+
+@Component
+@RequiredArgsConstructor
+public class FriendFeedTimelines {
+
+    // ленты пользователей - лайки, поставленные их друзьями, раскладываются по лентам в момент лайка
+    // (у каждого пользователя кольцевой буфер последних TIMELINE_SIZE записей); лайк раскладывается
+    // по лентам всех пользователей, добавивших его автора в друзья, в отдельном потоке
+
+    // количество последних записей, хранимых в ленте пользователя
+    public static final int TIMELINE_SIZE = 100;
+
+    // период, за который ленты восстанавливаются из базы данных при запуске приложения
+    public static final Duration RESTORE_WINDOW = Duration.ofDays(30);
+
+    // максимальное количество лайков, ожидающих раскладки по лентам - при переполнении поток запроса ждет места
+    // в очереди: раскладка в потоке запроса обогнала бы лайки из очереди и нарушила порядок лайков и их удалений
+    private static final int MAX_PENDING_EVENTS = 100_000;
+
+    private final FriendGraphIndex friendGraph;
+
+    // ленты пользователей - <id пользователя, кольцевой буфер записей>
+    private final ConcurrentMap<Long, Timeline> timelines = new ConcurrentHashMap<>();
+
+    // один поток раскладки сохраняет порядок лайков и их удалений
+    private final ThreadPoolExecutor fanOut = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(MAX_PENDING_EVENTS), FriendFeedTimelines::awaitQueueSpace);
+
+    // остановка потока раскладки при завершении приложения
+    @PreDestroy
+    public void shutdown() {
+        fanOut.shutdown();
+    }
+
+    // постановка лайка в заполненную очередь раскладки с ожиданием места в ней
+    private static void awaitQueueSpace(Runnable event, ThreadPoolExecutor executor) {
+
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Раскладка лайков по лентам остановлена");
+        }
+
+        try {
+            executor.getQueue().put(event);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Ожидание места в очереди раскладки прервано", e);
+        }
+    }
+
+    // удаление всех лент
+    public void clear() {
+        timelines.clear();
+    }
+
+    // добавление записи в ленту пользователя без раскладки - для восстановления лент из базы данных
+    // (записи одной ленты добавляются в порядке возрастания времени лайка)
+    public void append(long timelineUserId, int filmId, long userId, Instant likedAt) {
+
+        timelines.computeIfAbsent(timelineUserId, id -> new Timeline())
+                .add(filmId, userId, likedAt.toEpochMilli());
+    }
+
+    // раскладка лайка по лентам пользователей, добавивших его автора в друзья
+    public void publishLike(int filmId, long userId, Instant likedAt) {
+
+        fanOut.execute(() -> {
+            for (long followerId : friendGraph.getIncomingFriends(userId)) {
+                append(followerId, filmId, userId, likedAt);
+            }
+        });
+    }
+
+    // удаление лайка из лент пользователей, добавивших его автора в друзья
+    public void removeLike(int filmId, long userId) {
+
+        fanOut.execute(() -> {
+            for (long followerId : friendGraph.getIncomingFriends(userId)) {
+                Timeline timeline = timelines.get(followerId);
+                if (timeline != null) {
+                    timeline.remove(filmId, userId);
+                }
+            }
+        });
+    }
+
+    // ожидание раскладки всех лайков, поставленных до вызова
+    public void awaitPendingEvents() {
+
+        try {
+            fanOut.submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // получение последних записей ленты пользователя, новые - первыми; записи о пользователях,
+    // удаленных из друзей после лайка, пропускаются
+    public List<FeedEvent> listFeed(long userId, int limit) {
+
+        Timeline timeline = timelines.get(userId);
+
+        if (timeline == null) {
+            return List.of();
+        }
+
+        return timeline.list(limit, friendId -> friendGraph.hasFriend(userId, friendId));
+    }
+
+    // кольцевой буфер записей ленты - массивы растут по мере заполнения до TIMELINE_SIZE,
+    // после чего новая запись заменяет самую старую
+    private static final class Timeline {
+
+        private int[] filmIds = new int[4];
+        private long[] userIds = new long[4];
+        private long[] times = new long[4];
+        private int next; // позиция следующей записи
+        private int size;
+
+        synchronized void add(int filmId, long userId, long time) {
+
+            if (size == filmIds.length && size < TIMELINE_SIZE) {
+                int capacity = Math.min(size * 2, TIMELINE_SIZE);
+                filmIds = Arrays.copyOf(filmIds, capacity);
+                userIds = Arrays.copyOf(userIds, capacity);
+                times = Arrays.copyOf(times, capacity);
+                next = size;
+            }
+
+            filmIds[next] = filmId;
+            userIds[next] = userId;
+            times[next] = time;
+            next = (next + 1) % filmIds.length;
+            size = Math.min(size + 1, filmIds.length);
+        }
+
+        // удаление записи со сдвигом более старых записей
+        synchronized void remove(int filmId, long userId) {
+
+            boolean found = false;
+            for (int i = 0; i < size && !found; i++) {
+                found = filmIds[i] == filmId && userIds[i] == userId;
+            }
+            if (!found) {
+                return;
+            }
+
+            int kept = 0;
+            int[] keptFilmIds = new int[filmIds.length];
+            long[] keptUserIds = new long[userIds.length];
+            long[] keptTimes = new long[times.length];
+
+            for (int i = 0; i < size; i++) {
+                int position = (next - size + i + filmIds.length) % filmIds.length;
+                if (filmIds[position] != filmId || userIds[position] != userId) {
+                    keptFilmIds[kept] = filmIds[position];
+                    keptUserIds[kept] = userIds[position];
+                    keptTimes[kept] = times[position];
+                    kept++;
+                }
+            }
+
+            filmIds = keptFilmIds;
+            userIds = keptUserIds;
+            times = keptTimes;
+            size = kept;
+            next = kept % filmIds.length;
+        }
+
+        synchronized List<FeedEvent> list(int limit, LongPredicate isFriend) {
+
+            List<FeedEvent> events = new ArrayList<>(Math.min(limit, size));
+
+            for (int i = 1; i <= size && events.size() < limit; i++) {
+                int position = (next - i + filmIds.length) % filmIds.length;
+                if (isFriend.test(userIds[position])) {
+                    events.add(new FeedEvent(filmIds[position], userIds[position],
+                            Instant.ofEpochMilli(times[position])));
+                }
+            }
+
+            return events;
+        }
+    }
+
+}
@@ -0,0 +1,414 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.SearchLimitExceededException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Component
+public class FriendGraphIndex {
+
+    // граф дружбы пользователей в памяти приложения - для каждого пользователя отсортированный массив id друзей
+    // (массивы не изменяются после сохранения: при добавлении и удалении друга массив пользователя заменяется копией)
+    // и обратные связи - для каждого пользователя отсортированный массив id добавивших его в друзья
+
+    private static final long[] NO_FRIENDS = new long[0];
+
+    // во сколько раз один список друзей должен быть больше другого, чтобы пересекать их поиском, а не слиянием
+    private static final int GALLOPING_RATIO = 8;
+
+    // максимальное количество кандидатов, учитываемых при подборе рекомендаций друзей для одного пользователя
+    public static final int MAX_SUGGESTION_CANDIDATES = 10_000;
+
+    // максимальное количество связей друзей пользователя, просматриваемых при подборе рекомендаций
+    public static final int MAX_SUGGESTION_EDGES = 500_000;
+
+    // максимальное количество пользователей, просматриваемых при поиске цепочки друзей
+    public static final int MAX_PATH_VISITED = 200_000;
+
+    // друзья пользователей - <id пользователя, отсортированный массив id друзей>
+    private final ConcurrentMap<Long, long[]> friends = new ConcurrentHashMap<>();
+
+    // обратные связи - <id пользователя, отсортированный массив id пользователей, добавивших его в друзья>
+    private final ConcurrentMap<Long, long[]> incoming = new ConcurrentHashMap<>();
+
+    // удаление всех данных графа
+    public void clear() {
+        friends.clear();
+        incoming.clear();
+    }
+
+    // загрузка всего графа - <id пользователя, отсортированный массив id друзей>; обратные связи строятся
+    // за два прохода по всем связям, без поэлементных вставок в массивы
+    public void load(Map<Long, long[]> sortedFriendsByUser) {
+
+        Map<Long, long[]> loadedIncoming = new HashMap<>();
+
+        // количество входящих связей каждого пользователя
+        Map<Long, Integer> incomingCounts = new HashMap<>();
+        sortedFriendsByUser.values().forEach(userFriends -> {
+            for (long friendId : userFriends) {
+                incomingCounts.merge(friendId, 1, Integer::sum);
+            }
+        });
+        incomingCounts.forEach((userId, count) -> loadedIncoming.put(userId, new long[count]));
+
+        // заполнение массивов с конца - счетчик указывает на следующую свободную позицию
+        sortedFriendsByUser.forEach((userId, userFriends) -> {
+            for (long friendId : userFriends) {
+                int position = incomingCounts.merge(friendId, -1, Integer::sum);
+                loadedIncoming.get(friendId)[position] = userId;
+            }
+        });
+        loadedIncoming.values().forEach(Arrays::sort);
+
+        clear();
+        sortedFriendsByUser.forEach(this::putSorted);
+        incoming.putAll(loadedIncoming);
+
+        log.info("Загружен граф дружбы: пользователей с друзьями - {}, добавленных в друзья - {}",
+                friends.size(), incoming.size());
+    }
+
+    // сохранение всего списка друзей пользователя - массив должен быть отсортирован и не изменяться после передачи
+    public void putFriends(long userId, long[] sortedFriendIds) {
+
+        long[] previous = getFriends(userId);
+        putSorted(userId, sortedFriendIds);
+
+        // обновляем обратные связи только для изменившихся друзей
+        for (long friendId : previous) {
+            if (Arrays.binarySearch(sortedFriendIds, friendId) < 0) {
+                remove(incoming, friendId, userId);
+            }
+        }
+        for (long friendId : sortedFriendIds) {
+            if (Arrays.binarySearch(previous, friendId) < 0) {
+                insert(incoming, friendId, userId);
+            }
+        }
+    }
+
+    // добавление друга пользователю
+    public void addFriend(long userId, long friendId) {
+
+        insert(friends, userId, friendId);
+        insert(incoming, friendId, userId);
+    }
+
+    // удаление друга у пользователя
+    public void removeFriend(long userId, long friendId) {
+
+        remove(friends, userId, friendId);
+        remove(incoming, friendId, userId);
+    }
+
+    // получение отсортированного массива id друзей пользователя - массив нельзя изменять
+    public long[] getFriends(long userId) {
+        return friends.getOrDefault(userId, NO_FRIENDS);
+    }
+
+    // получение отсортированного массива id пользователей, добавивших пользователя в друзья - массив нельзя изменять
+    public long[] getIncomingFriends(long userId) {
+        return incoming.getOrDefault(userId, NO_FRIENDS);
+    }
+
+    // проверка наличия друга у пользователя - O(log n)
+    public boolean hasFriend(long userId, long friendId) {
+        return Arrays.binarySearch(getFriends(userId), friendId) >= 0;
+    }
+
+    // получение отсортированного массива id общих друзей двух пользователей
+    public long[] listCommonFriends(long userId, long otherId) {
+
+        long[] commonFriends = intersect(getFriends(userId), getFriends(otherId));
+
+        log.info("Общих друзей в графе у пользователей {} и {} : {}", userId, otherId, commonFriends.length);
+
+        return commonFriends;
+    }
+
+    // подсчет общих друзей двух пользователей - без построения массива общих друзей
+    public int countCommonFriends(long userId, long otherId) {
+        return intersect(getFriends(userId), getFriends(otherId), null);
+    }
+
+    // получение id рекомендуемых друзей - друзей друзей пользователя, упорядоченных по убыванию количества
+    // общих друзей (при равенстве - по возрастанию id); уже добавленные в друзья пользователи не рекомендуются
+    public List<Long> listFriendSuggestions(long userId, int limit) {
+
+        long[] userFriends = getFriends(userId);
+
+        // количество общих друзей у каждого кандидата - <id кандидата, количество общих друзей>
+        Map<Long, Integer> mutualFriends = new HashMap<>();
+        int edgesLeft = MAX_SUGGESTION_EDGES;
+
+        for (long friendId : userFriends) {
+
+            long[] friendFriends = getFriends(friendId);
+
+            // обход ограничен, чтобы время ответа не зависело от размера окружения пользователя: друг со слишком
+            // большим списком пропускается, меньшие списки остальных друзей еще учитываются
+            if (edgesLeft < friendFriends.length) {
+                continue;
+            }
+            edgesLeft -= friendFriends.length;
+
+            for (long candidateId : friendFriends) {
+
+                if (candidateId == userId || Arrays.binarySearch(userFriends, candidateId) >= 0) {
+                    continue;
+                }
+
+                // после набора предельного количества кандидатов учитываются только уже найденные
+                if (mutualFriends.size() < MAX_SUGGESTION_CANDIDATES) {
+                    mutualFriends.merge(candidateId, 1, Integer::sum);
+                } else {
+                    mutualFriends.computeIfPresent(candidateId, (id, count) -> count + 1);
+                }
+            }
+        }
+
+        List<Long> suggestions = mutualFriends.entrySet().stream()
+                .sorted(Map.Entry.<Long, Integer>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+
+        log.info("Для пользователя {} найдено рекомендаций друзей: {} из {} кандидатов",
+                userId, suggestions.size(), mutualFriends.size());
+
+        return suggestions;
+    }
+
+    // поиск кратчайшей цепочки друзей от пользователя до другого пользователя двунаправленным обходом в ширину:
+    // от первого пользователя по спискам друзей, от второго - по обратным связям, каждый раз расширяется меньший
+    // из двух фронтов; обход прекращается после просмотра MAX_PATH_VISITED пользователей
+    // возвращает id пользователей цепочки от userId до otherId включительно, пустой массив - если цепочки
+    // длиной до maxHops нет; исчерпание ограничения на обход - отдельный исход: цепочка может существовать,
+    // поэтому выбрасывается SearchLimitExceededException
+    public long[] findPath(long userId, long otherId, int maxHops) {
+
+        if (userId == otherId) {
+            return new long[]{userId};
+        }
+
+        // предшественники найденных пользователей на пути от userId и следующие за ними на пути к otherId
+        Map<Long, Long> forwardParents = new HashMap<>();
+        Map<Long, Long> backwardParents = new HashMap<>();
+        forwardParents.put(userId, userId);
+        backwardParents.put(otherId, otherId);
+
+        List<Long> forwardFrontier = new ArrayList<>(List.of(userId));
+        List<Long> backwardFrontier = new ArrayList<>(List.of(otherId));
+        int hops = 0;
+        int visitsLeft = MAX_PATH_VISITED;
+
+        while (hops < maxHops && !forwardFrontier.isEmpty() && !backwardFrontier.isEmpty()) {
+
+            boolean forward = forwardFrontier.size() <= backwardFrontier.size();
+            List<Long> frontier = forward ? forwardFrontier : backwardFrontier;
+            Map<Long, Long> parents = forward ? forwardParents : backwardParents;
+            Map<Long, Long> otherParents = forward ? backwardParents : forwardParents;
+
+            List<Long> nextFrontier = new ArrayList<>();
+
+            for (long id : frontier) {
+
+                long[] neighbours = forward ? getFriends(id) : getIncomingFriends(id);
+
+                // обход ограничен, чтобы пользователи с огромным числом связей не приводили к неограниченной работе
+                if (visitsLeft < neighbours.length) {
+                    throw new SearchLimitExceededException(String.format("Поиск цепочки друзей от пользователя %d "
+                            + "до пользователя %d превысил ограничение на обход", userId, otherId));
+                }
+                visitsLeft -= neighbours.length;
+
+                for (long neighbourId : neighbours) {
+
+                    if (parents.putIfAbsent(neighbourId, id) != null) {
+                        continue;
+                    }
+
+                    // фронты встретились - первая встреча дает кратчайшую цепочку
+                    if (otherParents.containsKey(neighbourId)) {
+                        return joinPath(neighbourId, forwardParents, backwardParents);
+                    }
+                    nextFrontier.add(neighbourId);
+                }
+            }
+
+            if (forward) {
+                forwardFrontier = nextFrontier;
+            } else {
+                backwardFrontier = nextFrontier;
+            }
+            hops++;
+        }
+
+        return NO_FRIENDS;
+    }
+
+    // сборка цепочки из двух половин, встретившихся на пользователе meetingId
+    private static long[] joinPath(long meetingId, Map<Long, Long> forwardParents, Map<Long, Long> backwardParents) {
+
+        // половина от первого пользователя собирается с конца и разворачивается
+        List<Long> path = new ArrayList<>();
+        for (long id = meetingId; ; id = forwardParents.get(id)) {
+            path.add(id);
+            if (forwardParents.get(id) == id) {
+                break;
+            }
+        }
+        Collections.reverse(path);
+
+        for (long id = meetingId; backwardParents.get(id) != id; ) {
+            id = backwardParents.get(id);
+            path.add(id);
+        }
+
+        return path.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    // вставка значения в отсортированный массив по ключу - массив заменяется копией
+    private static void insert(ConcurrentMap<Long, long[]> arrays, long key, long value) {
+
+        arrays.compute(key, (id, current) -> {
+
+            long[] values = (current == null) ? NO_FRIENDS : current;
+            int position = Arrays.binarySearch(values, value);
+
+            if (position >= 0) {
+                return current;
+            }
+
+            int insertion = -position - 1;
+            long[] updated = new long[values.length + 1];
+            System.arraycopy(values, 0, updated, 0, insertion);
+            updated[insertion] = value;
+            System.arraycopy(values, insertion, updated, insertion + 1, values.length - insertion);
+
+            return updated;
+        });
+    }
+
+    // удаление значения из отсортированного массива по ключу - массив заменяется копией, пустой массив удаляется
+    private static void remove(ConcurrentMap<Long, long[]> arrays, long key, long value) {
+
+        arrays.computeIfPresent(key, (id, current) -> {
+
+            int position = Arrays.binarySearch(current, value);
+
+            if (position < 0) {
+                return current;
+            }
+            if (current.length == 1) {
+                return null;
+            }
+
+            long[] updated = new long[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, position);
+            System.arraycopy(current, position + 1, updated, position, current.length - position - 1);
+
+            return updated;
+        });
+    }
+
+    // сохранение отсортированного массива друзей без обновления обратных связей
+    private void putSorted(long userId, long[] sortedFriendIds) {
+
+        if (sortedFriendIds.length == 0) {
+            friends.remove(userId);
+        } else {
+            friends.put(userId, sortedFriendIds);
+        }
+    }
+
+    // пересечение отсортированных массивов: слиянием - O(n + m), если размеры близки,
+    // иначе экспоненциальным поиском элементов меньшего массива в большем - O(n log(m / n))
+    static long[] intersect(long[] first, long[] second) {
+
+        long[] result = new long[Math.min(first.length, second.length)];
+        int size = intersect(first, second, result);
+
+        return (size == result.length) ? result : Arrays.copyOf(result, size);
+    }
+
+    // запись общих элементов в result (если result не null) и возврат их количества
+    private static int intersect(long[] first, long[] second, long[] result) {
+
+        long[] small = (first.length <= second.length) ? first : second;
+        long[] large = (small == first) ? second : first;
+
+        int size = 0;
+
+        if ((long) small.length * GALLOPING_RATIO < large.length) {
+
+            int from = 0;
+            for (long value : small) {
+                from = gallop(large, from, value);
+                if (from == large.length) {
+                    break;
+                }
+                if (large[from] == value) {
+                    if (result != null) {
+                        result[size] = value;
+                    }
+                    size++;
+                }
+            }
+
+        } else {
+
+            int i = 0;
+            int j = 0;
+            while (i < small.length && j < large.length) {
+                if (small[i] < large[j]) {
+                    i++;
+                } else if (small[i] > large[j]) {
+                    j++;
+                } else {
+                    if (result != null) {
+                        result[size] = small[i];
+                    }
+                    size++;
+                    i++;
+                    j++;
+                }
+            }
+        }
+
+        return size;
+    }
+
+    // позиция первого элемента массива, не меньшего value, начиная с from: шаги удваиваются, затем бинарный поиск
+    private static int gallop(long[] array, int from, long value) {
+
+        int step = 1;
+        int low = from;
+        int high = from;
+
+        while (high < array.length && array[high] < value) {
+            low = high + 1;
+            high = from + step;
+            step <<= 1;
+        }
+
+        high = Math.min(high, array.length);
+
+        int position = Arrays.binarySearch(array, low, high, value);
+        return (position >= 0) ? position : -position - 1;
+    }
+
+}
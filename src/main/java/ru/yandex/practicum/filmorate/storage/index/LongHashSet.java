@@ -0,0 +1,248 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.LongConsumer;
+
+public class LongHashSet extends AbstractSet<Long> {
+
+    // набор id на массиве long без упаковки в Long: открытая адресация с линейным пробированием,
+    // 0 в таблице означает пустую ячейку, сам id 0 хранится отдельным флагом; при удалении следующие
+    // за удаленной ячейкой значения сдвигаются назад, поэтому таблица не копит удаленные ячейки
+
+    private static final int MIN_CAPACITY = 4;
+
+    // состояния итератора без возвращенной ячейки таблицы
+    private static final int NONE_RETURNED = -1;
+    private static final int ZERO_RETURNED = -2;
+
+    private long[] table = new long[MIN_CAPACITY];
+    private boolean containsZero;
+    private int size;
+
+    // добавление id
+    public boolean add(long id) {
+
+        if (id == 0) {
+            boolean added = !containsZero;
+            containsZero = true;
+            size += added ? 1 : 0;
+            return added;
+        }
+
+        int mask = table.length - 1;
+        int position = LongHashing.slot(id, mask);
+
+        while (table[position] != 0) {
+            if (table[position] == id) {
+                return false;
+            }
+            position = (position + 1) & mask;
+        }
+
+        table[position] = id;
+        size++;
+
+        // заполненность таблицы - не больше половины
+        if (2 * size > table.length) {
+            rehash(table.length * 2);
+        }
+        return true;
+    }
+
+    // проверка наличия id
+    public boolean contains(long id) {
+
+        if (id == 0) {
+            return containsZero;
+        }
+
+        int mask = table.length - 1;
+        for (int position = LongHashing.slot(id, mask); table[position] != 0; position = (position + 1) & mask) {
+            if (table[position] == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // удаление id
+    public boolean remove(long id) {
+
+        if (id == 0) {
+            boolean removed = containsZero;
+            containsZero = false;
+            size -= removed ? 1 : 0;
+            return removed;
+        }
+
+        int mask = table.length - 1;
+        int position = LongHashing.slot(id, mask);
+
+        while (table[position] != id) {
+            if (table[position] == 0) {
+                return false;
+            }
+            position = (position + 1) & mask;
+        }
+
+        removeAt(position);
+        return true;
+    }
+
+    // удаление значения из занятой ячейки таблицы
+    private void removeAt(int position) {
+
+        int mask = table.length - 1;
+
+        // сдвиг назад значений, для которых освободившаяся ячейка лежит на пути от их начальной ячейки
+        for (int next = (position + 1) & mask; table[next] != 0; next = (next + 1) & mask) {
+            int home = LongHashing.slot(table[next], mask);
+            if (((next - home) & mask) >= ((next - position) & mask)) {
+                table[position] = table[next];
+                position = next;
+            }
+        }
+        table[position] = 0;
+        size--;
+    }
+
+    // обработка всех id без упаковки
+    public void forEachId(LongConsumer action) {
+
+        if (containsZero) {
+            action.accept(0);
+        }
+        for (long id : table) {
+            if (id != 0) {
+                action.accept(id);
+            }
+        }
+    }
+
+    @Override
+    public boolean add(Long id) {
+        return add(id.longValue());
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return (o instanceof Long) && contains(((Long) o).longValue());
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return (o instanceof Long) && remove(((Long) o).longValue());
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        table = new long[MIN_CAPACITY];
+        containsZero = false;
+        size = 0;
+    }
+
+    @Override
+    public Iterator<Long> iterator() {
+
+        return new Iterator<>() {
+
+            // обход таблицы начинается после пустой ячейки: цепочка значений не проходит через нее, поэтому
+            // сдвиг назад при удалении переносит значения только из еще не пройденных ячеек в ячейку удаленного
+            // значения и дальше - после удаления обход заново проверяет ячейку удаленного значения
+            private final int start = emptyPosition();
+            private boolean zeroReturned = !containsZero;
+            private int offset = nextOffset(0);
+            private int lastReturned = NONE_RETURNED;
+
+            @Override
+            public boolean hasNext() {
+                return !zeroReturned || offset < table.length;
+            }
+
+            @Override
+            public Long next() {
+
+                if (!zeroReturned) {
+                    zeroReturned = true;
+                    lastReturned = ZERO_RETURNED;
+                    return 0L;
+                }
+                if (offset >= table.length) {
+                    throw new NoSuchElementException();
+                }
+
+                lastReturned = position(offset);
+                offset = nextOffset(offset + 1);
+                return table[lastReturned];
+            }
+
+            @Override
+            public void remove() {
+
+                if (lastReturned == NONE_RETURNED) {
+                    throw new IllegalStateException();
+                }
+
+                if (lastReturned == ZERO_RETURNED) {
+                    containsZero = false;
+                    size--;
+                } else {
+                    removeAt(lastReturned);
+                    offset = nextOffset((lastReturned - start - 1) & (table.length - 1));
+                }
+                lastReturned = NONE_RETURNED;
+            }
+
+            // ячейка таблицы по смещению от начала обхода
+            private int position(int offset) {
+                return (start + 1 + offset) & (table.length - 1);
+            }
+
+            // смещение следующей занятой ячейки таблицы
+            private int nextOffset(int from) {
+
+                int next = from;
+                while (next < table.length && table[position(next)] == 0) {
+                    next++;
+                }
+                return next;
+            }
+        };
+    }
+
+    // позиция пустой ячейки таблицы - таблица заполнена не больше чем наполовину
+    private int emptyPosition() {
+
+        int position = 0;
+        while (table[position] != 0) {
+            position++;
+        }
+        return position;
+    }
+
+    // перенос значений в таблицу нового размера
+    private void rehash(int capacity) {
+
+        long[] oldTable = table;
+        table = new long[capacity];
+        int mask = capacity - 1;
+
+        for (long id : oldTable) {
+            if (id != 0) {
+                int position = LongHashing.slot(id, mask);
+                while (table[position] != 0) {
+                    position = (position + 1) & mask;
+                }
+                table[position] = id;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,18 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+final class LongHashing {
+
+    // выбор ячейки таблицы с открытой адресацией для id: умножение на константу Фибоначчи перемешивает
+    // последовательные id, иначе они занимали бы соседние ячейки и удлиняли цепочки пробирования
+
+    private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+    private LongHashing() {
+    }
+
+    static int slot(long key, int mask) {
+        long hash = key * GOLDEN_RATIO;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+}
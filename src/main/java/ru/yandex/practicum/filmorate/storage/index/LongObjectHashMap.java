@@ -0,0 +1,176 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+public class LongObjectHashMap<V> {
+
+    // словарь с ключами long без упаковки в Long: ключи и значения лежат в параллельных массивах,
+    // открытая адресация с линейным пробированием, пустая ячейка - ячейка без значения (null не хранится);
+    // id фильмов (int) хранятся как long - отдельный словарь для int-ключей не нужен
+
+    private static final int MIN_CAPACITY = 4;
+
+    private long[] keys = new long[MIN_CAPACITY];
+    private Object[] values = new Object[MIN_CAPACITY];
+    private int size;
+
+    // получение значения по ключу или null
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+
+        int position = findPosition(key);
+        return (position < 0) ? null : (V) values[position];
+    }
+
+    // проверка наличия ключа
+    public boolean containsKey(long key) {
+        return findPosition(key) >= 0;
+    }
+
+    // сохранение значения, возвращается прежнее значение или null
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+
+        if (value == null) {
+            throw new IllegalArgumentException("Значение не может быть null");
+        }
+
+        int mask = keys.length - 1;
+        int position = LongHashing.slot(key, mask);
+
+        while (values[position] != null) {
+            if (keys[position] == key) {
+                V previous = (V) values[position];
+                values[position] = value;
+                return previous;
+            }
+            position = (position + 1) & mask;
+        }
+
+        keys[position] = key;
+        values[position] = value;
+        size++;
+
+        // заполненность таблицы - не больше половины
+        if (2 * size > keys.length) {
+            rehash(keys.length * 2);
+        }
+        return null;
+    }
+
+    // получение значения по ключу, отсутствующее значение создается и сохраняется
+    public V computeIfAbsent(long key, LongFunction<V> mappingFunction) {
+
+        V value = get(key);
+        if (value == null) {
+            value = mappingFunction.apply(key);
+            put(key, value);
+        }
+        return value;
+    }
+
+    // удаление значения по ключу, возвращается удаленное значение или null
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+
+        int position = findPosition(key);
+        if (position < 0) {
+            return null;
+        }
+
+        V removed = (V) values[position];
+        int mask = keys.length - 1;
+
+        // сдвиг назад значений, для которых освободившаяся ячейка лежит на пути от их начальной ячейки
+        for (int next = (position + 1) & mask; values[next] != null; next = (next + 1) & mask) {
+            int home = LongHashing.slot(keys[next], mask);
+            if (((next - home) & mask) >= ((next - position) & mask)) {
+                keys[position] = keys[next];
+                values[position] = values[next];
+                position = next;
+            }
+        }
+        keys[position] = 0;
+        values[position] = null;
+        size--;
+        return removed;
+    }
+
+    // обработка всех значений в порядке ячеек таблицы
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<V> action) {
+
+        for (Object value : values) {
+            if (value != null) {
+                action.accept((V) value);
+            }
+        }
+    }
+
+    // обработка всех пар ключ-значение в порядке ячеек таблицы
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryConsumer<V> action) {
+
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null) {
+                action.accept(keys[i], (V) values[i]);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        keys = new long[MIN_CAPACITY];
+        values = new Object[MIN_CAPACITY];
+        size = 0;
+    }
+
+    // обработчик пары ключ-значение без упаковки ключа
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    // позиция ключа в таблице или -1
+    private int findPosition(long key) {
+
+        int mask = keys.length - 1;
+        for (int position = LongHashing.slot(key, mask); values[position] != null;
+             position = (position + 1) & mask) {
+            if (keys[position] == key) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    // перенос ключей и значений в таблицу нового размера
+    private void rehash(int capacity) {
+
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        int mask = capacity - 1;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                int position = LongHashing.slot(oldKeys[i], mask);
+                while (values[position] != null) {
+                    position = (position + 1) & mask;
+                }
+                keys[position] = oldKeys[i];
+                values[position] = oldValues[i];
+            }
+        }
+    }
+
+}
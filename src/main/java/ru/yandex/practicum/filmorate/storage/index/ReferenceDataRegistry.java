@@ -0,0 +1,113 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.FilmGenre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+import java.util.function.Function;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ReferenceDataRegistry {
+
+    // справочники рейтингов MPA и жанров, загруженные из базы данных в память приложения
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // текущее содержимое справочников - заменяется целиком при перезагрузке
+    private volatile Snapshot snapshot = new Snapshot(List.of(), List.of());
+
+    // загрузка справочников при запуске приложения и их периодическое обновление
+    @PostConstruct
+    @Scheduled(initialDelayString = "${filmorate.reference-data.reload-interval-ms:60000}",
+            fixedDelayString = "${filmorate.reference-data.reload-interval-ms:60000}")
+    public void reload() {
+
+        List<Mpa> mpa = jdbcTemplate.query("SELECT * FROM rating_mpa ORDER BY rating_mpa_id",
+                (rs, rowNum) -> new Mpa(rs.getInt("rating_mpa_id"), rs.getString("rating_mpa_name")));
+
+        List<FilmGenre> genres = jdbcTemplate.query("SELECT * FROM genres ORDER BY genre_id",
+                (rs, rowNum) -> new FilmGenre(rs.getInt("genre_id"), rs.getString("genre_name")));
+
+        Snapshot loaded = new Snapshot(mpa, genres);
+
+        if (!loaded.equals(snapshot)) {
+            snapshot = loaded;
+            log.info("Загружены справочники: рейтингов MPA - {}, жанров - {}", mpa.size(), genres.size());
+        }
+    }
+
+    // получение списка рейтингов MPA, отсортированного по id
+    public List<Mpa> listMpa() {
+        return snapshot.mpaList;
+    }
+
+    // получение рейтинга MPA по id, null - если рейтинга нет в справочнике
+    public Mpa getMpa(int id) {
+
+        Mpa[] mpaById = snapshot.mpaById;
+        return (id >= 0 && id < mpaById.length) ? mpaById[id] : null;
+    }
+
+    // получение списка жанров, отсортированного по id
+    public List<FilmGenre> listGenres() {
+        return snapshot.genreList;
+    }
+
+    // получение жанра по id, null - если жанра нет в справочнике
+    public FilmGenre getGenre(int id) {
+
+        FilmGenre[] genresById = snapshot.genresById;
+        return (id >= 0 && id < genresById.length) ? genresById[id] : null;
+    }
+
+    // неизменяемое содержимое справочников - списки и массивы с доступом по id
+    private static class Snapshot {
+
+        private final List<Mpa> mpaList;
+        private final Mpa[] mpaById;
+        private final List<FilmGenre> genreList;
+        private final FilmGenre[] genresById;
+
+        Snapshot(List<Mpa> mpa, List<FilmGenre> genres) {
+
+            mpaList = List.copyOf(mpa);
+            mpaById = indexById(mpaList, Mpa::getId, new Mpa[maxId(mpaList, Mpa::getId) + 1]);
+            genreList = List.copyOf(genres);
+            genresById = indexById(genreList, FilmGenre::getId, new FilmGenre[maxId(genreList, FilmGenre::getId) + 1]);
+        }
+
+        private static <T> int maxId(List<T> items, Function<T, Integer> id) {
+            return items.stream().mapToInt(id::apply).max().orElse(-1);
+        }
+
+        private static <T> T[] indexById(List<T> items, Function<T, Integer> id, T[] byId) {
+
+            items.forEach(item -> byId[id.apply(item)] = item);
+            return byId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+
+            if (this == o) return true;
+            if (!(o instanceof Snapshot)) return false;
+
+            Snapshot other = (Snapshot) o;
+            return mpaList.equals(other.mpaList) && genreList.equals(other.genreList);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * mpaList.hashCode() + genreList.hashCode();
+        }
+    }
+
+}
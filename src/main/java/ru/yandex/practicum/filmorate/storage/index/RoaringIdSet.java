@@ -0,0 +1,546 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class RoaringIdSet extends AbstractSet<Long> {
+
+    // сжатый набор id в виде битовой карты по схеме Roaring: id делятся на блоки по 65536 значений,
+    // старшие биты id - номер блока, младшие 16 бит хранятся в контейнере блока -
+    // отсортированном массиве char (до 4096 значений) или битовой карте из 1024 long (больше 4096 значений)
+
+    private static final int BLOCK_BITS = 16;
+    private static final int BLOCK_MASK = (1 << BLOCK_BITS) - 1;
+
+    // наибольшее количество значений в контейнере-массиве - при превышении он заменяется битовой картой
+    private static final int ARRAY_CONTAINER_MAX_SIZE = 4096;
+
+    private static final int BITMAP_WORDS = (1 << BLOCK_BITS) / Long.SIZE;
+
+    // номера блоков по возрастанию и соответствующие им контейнеры
+    private long[] keys = new long[0];
+    private Container[] containers = new Container[0];
+    private int blocks;
+    private int size;
+
+    @Override
+    public boolean add(Long id) {
+
+        long key = id >> BLOCK_BITS;
+        int position = findBlock(key);
+
+        if (position < 0) {
+            position = -position - 1;
+            insertBlock(position, key, new ArrayContainer());
+        }
+
+        Container container = containers[position];
+        boolean added = container.add((char) (id & BLOCK_MASK));
+
+        if (added) {
+            size++;
+            containers[position] = container.optimize();
+        }
+
+        return added;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+
+        if (!(o instanceof Long)) {
+            return false;
+        }
+
+        long id = (Long) o;
+        int position = findBlock(id >> BLOCK_BITS);
+
+        if (position < 0 || !containers[position].remove((char) (id & BLOCK_MASK))) {
+            return false;
+        }
+
+        size--;
+
+        if (containers[position].cardinality() == 0) {
+            removeBlock(position);
+        } else {
+            containers[position] = containers[position].optimize();
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+
+        if (!(o instanceof Long)) {
+            return false;
+        }
+
+        long id = (Long) o;
+        int position = findBlock(id >> BLOCK_BITS);
+
+        return position >= 0 && containers[position].contains((char) (id & BLOCK_MASK));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+
+        keys = new long[0];
+        containers = new Container[0];
+        blocks = 0;
+        size = 0;
+    }
+
+    // обход id в порядке возрастания номера блока и младших бит; удаление через итератор удаляет
+    // последний возвращенный id и заново находит блок следующего id (удаление может убрать опустевший блок)
+    @Override
+    public Iterator<Long> iterator() {
+
+        return new Iterator<>() {
+
+            private int block = 0;
+            private int value = (blocks > 0) ? containers[0].nextValue(0) : -1;
+            private Long lastReturned;
+
+            @Override
+            public boolean hasNext() {
+                return block < blocks;
+            }
+
+            @Override
+            public Long next() {
+
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                long id = (keys[block] << BLOCK_BITS) | value;
+
+                // переходим к следующему значению блока, а после последнего - к первому значению следующего блока
+                value = (value < BLOCK_MASK) ? containers[block].nextValue(value + 1) : -1;
+                if (value < 0 && ++block < blocks) {
+                    value = containers[block].nextValue(0);
+                }
+
+                lastReturned = id;
+                return id;
+            }
+
+            @Override
+            public void remove() {
+
+                if (lastReturned == null) {
+                    throw new IllegalStateException();
+                }
+
+                Long nextKey = hasNext() ? keys[block] : null;
+                RoaringIdSet.this.remove(lastReturned);
+                lastReturned = null;
+
+                // значение следующего id не меняется, меняется только позиция его блока
+                block = (nextKey != null) ? findBlock(nextKey) : blocks;
+            }
+        };
+    }
+
+    // пересечение наборов - блоки сопоставляются по номеру, контейнеры пересекаются без распаковки id
+    public static RoaringIdSet and(RoaringIdSet first, RoaringIdSet second) {
+
+        RoaringIdSet result = new RoaringIdSet();
+        int i = 0;
+        int j = 0;
+
+        while (i < first.blocks && j < second.blocks) {
+            if (first.keys[i] < second.keys[j]) {
+                i++;
+            } else if (first.keys[i] > second.keys[j]) {
+                j++;
+            } else {
+                Container common = first.containers[i].and(second.containers[j]);
+                if (common.cardinality() > 0) {
+                    result.insertBlock(result.blocks, first.keys[i], common);
+                    result.size += common.cardinality();
+                }
+                i++;
+                j++;
+            }
+        }
+
+        return result;
+    }
+
+    // количество общих id двух наборов - без построения пересечения
+    public static int andCardinality(RoaringIdSet first, RoaringIdSet second) {
+
+        int cardinality = 0;
+        int i = 0;
+        int j = 0;
+
+        while (i < first.blocks && j < second.blocks) {
+            if (first.keys[i] < second.keys[j]) {
+                i++;
+            } else if (first.keys[i] > second.keys[j]) {
+                j++;
+            } else {
+                cardinality += first.containers[i].andCardinality(second.containers[j]);
+                i++;
+                j++;
+            }
+        }
+
+        return cardinality;
+    }
+
+    // поиск позиции блока по номеру - как у Arrays.binarySearch
+    private int findBlock(long key) {
+        return Arrays.binarySearch(keys, 0, blocks, key);
+    }
+
+    private void insertBlock(int position, long key, Container container) {
+
+        if (blocks == keys.length) {
+            int capacity = Math.max(4, blocks * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            containers = Arrays.copyOf(containers, capacity);
+        }
+
+        System.arraycopy(keys, position, keys, position + 1, blocks - position);
+        System.arraycopy(containers, position, containers, position + 1, blocks - position);
+
+        keys[position] = key;
+        containers[position] = container;
+        blocks++;
+    }
+
+    private void removeBlock(int position) {
+
+        System.arraycopy(keys, position + 1, keys, position, blocks - position - 1);
+        System.arraycopy(containers, position + 1, containers, position, blocks - position - 1);
+
+        blocks--;
+        containers[blocks] = null;
+    }
+
+    // контейнер младших 16 бит id одного блока
+    private interface Container {
+
+        boolean add(char value);
+
+        boolean remove(char value);
+
+        boolean contains(char value);
+
+        int cardinality();
+
+        int nextValue(int from); // наименьшее значение не меньше from, -1 - если такого нет
+
+        Container and(Container other);
+
+        int andCardinality(Container other);
+
+        Container optimize(); // выбор более компактного вида контейнера для текущего количества значений
+    }
+
+    // отсортированный массив значений - 2 байта на значение
+    private static final class ArrayContainer implements Container {
+
+        private char[] values;
+        private int cardinality;
+
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        public boolean add(char value) {
+
+            int position = Arrays.binarySearch(values, 0, cardinality, value);
+
+            if (position >= 0) {
+                return false;
+            }
+
+            position = -position - 1;
+
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.max(4, Math.min(cardinality * 2, ARRAY_CONTAINER_MAX_SIZE + 1)));
+            }
+
+            System.arraycopy(values, position, values, position + 1, cardinality - position);
+            values[position] = value;
+            cardinality++;
+
+            return true;
+        }
+
+        @Override
+        public boolean remove(char value) {
+
+            int position = Arrays.binarySearch(values, 0, cardinality, value);
+
+            if (position < 0) {
+                return false;
+            }
+
+            System.arraycopy(values, position + 1, values, position, cardinality - position - 1);
+            cardinality--;
+
+            return true;
+        }
+
+        @Override
+        public boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        public int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        public int nextValue(int from) {
+
+            int position = Arrays.binarySearch(values, 0, cardinality, (char) from);
+            if (position < 0) {
+                position = -position - 1;
+            }
+
+            return (position < cardinality) ? values[position] : -1;
+        }
+
+        @Override
+        public Container and(Container other) {
+
+            char[] common = new char[Math.min(cardinality, other.cardinality())];
+            int commonSize = 0;
+
+            if (other instanceof ArrayContainer) {
+
+                ArrayContainer array = (ArrayContainer) other;
+                int i = 0;
+                int j = 0;
+                while (i < cardinality && j < array.cardinality) {
+                    if (values[i] < array.values[j]) {
+                        i++;
+                    } else if (values[i] > array.values[j]) {
+                        j++;
+                    } else {
+                        common[commonSize++] = values[i];
+                        i++;
+                        j++;
+                    }
+                }
+
+            } else {
+
+                for (int i = 0; i < cardinality; i++) {
+                    if (other.contains(values[i])) {
+                        common[commonSize++] = values[i];
+                    }
+                }
+            }
+
+            return new ArrayContainer(common, commonSize);
+        }
+
+        @Override
+        public int andCardinality(Container other) {
+
+            int common = 0;
+
+            if (other instanceof ArrayContainer) {
+
+                ArrayContainer array = (ArrayContainer) other;
+                int i = 0;
+                int j = 0;
+                while (i < cardinality && j < array.cardinality) {
+                    if (values[i] < array.values[j]) {
+                        i++;
+                    } else if (values[i] > array.values[j]) {
+                        j++;
+                    } else {
+                        common++;
+                        i++;
+                        j++;
+                    }
+                }
+
+            } else {
+
+                for (int i = 0; i < cardinality; i++) {
+                    if (other.contains(values[i])) {
+                        common++;
+                    }
+                }
+            }
+
+            return common;
+        }
+
+        @Override
+        public Container optimize() {
+
+            if (cardinality > ARRAY_CONTAINER_MAX_SIZE) {
+                BitmapContainer bitmap = new BitmapContainer();
+                for (int i = 0; i < cardinality; i++) {
+                    bitmap.add(values[i]);
+                }
+                return bitmap;
+            }
+
+            // освобождаем лишнюю память после удалений
+            if (values.length > 16 && cardinality < values.length / 4) {
+                values = Arrays.copyOf(values, cardinality * 2);
+            }
+
+            return this;
+        }
+    }
+
+    // битовая карта на 65536 значений - 8 КБ на контейнер
+    private static final class BitmapContainer implements Container {
+
+        private final long[] words;
+        private int cardinality;
+
+        BitmapContainer() {
+            this(new long[BITMAP_WORDS]);
+        }
+
+        BitmapContainer(long[] words) {
+
+            this.words = words;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+        }
+
+        @Override
+        public boolean add(char value) {
+
+            long mask = 1L << value;
+            int word = value >>> 6;
+
+            if ((words[word] & mask) != 0) {
+                return false;
+            }
+
+            words[word] |= mask;
+            cardinality++;
+
+            return true;
+        }
+
+        @Override
+        public boolean remove(char value) {
+
+            long mask = 1L << value;
+            int word = value >>> 6;
+
+            if ((words[word] & mask) == 0) {
+                return false;
+            }
+
+            words[word] &= ~mask;
+            cardinality--;
+
+            return true;
+        }
+
+        @Override
+        public boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        public int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        public int nextValue(int from) {
+
+            int word = from >>> 6;
+            long current = words[word] & (-1L << from);
+
+            while (current == 0) {
+                if (++word == BITMAP_WORDS) {
+                    return -1;
+                }
+                current = words[word];
+            }
+
+            return word * Long.SIZE + Long.numberOfTrailingZeros(current);
+        }
+
+        @Override
+        public Container and(Container other) {
+
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+
+            long[] otherWords = ((BitmapContainer) other).words;
+            long[] common = new long[BITMAP_WORDS];
+
+            for (int word = 0; word < BITMAP_WORDS; word++) {
+                common[word] = words[word] & otherWords[word];
+            }
+
+            return new BitmapContainer(common).optimize();
+        }
+
+        @Override
+        public int andCardinality(Container other) {
+
+            if (other instanceof ArrayContainer) {
+                return other.andCardinality(this);
+            }
+
+            long[] otherWords = ((BitmapContainer) other).words;
+            int common = 0;
+
+            for (int word = 0; word < BITMAP_WORDS; word++) {
+                common += Long.bitCount(words[word] & otherWords[word]);
+            }
+
+            return common;
+        }
+
+        @Override
+        public Container optimize() {
+
+            if (cardinality > ARRAY_CONTAINER_MAX_SIZE) {
+                return this;
+            }
+
+            char[] values = new char[cardinality];
+            int position = 0;
+
+            for (int word = 0; word < BITMAP_WORDS; word++) {
+                long current = words[word];
+                while (current != 0) {
+                    values[position++] = (char) (word * Long.SIZE + Long.numberOfTrailingZeros(current));
+                    current &= current - 1;
+                }
+            }
+
+            return new ArrayContainer(values, cardinality);
+        }
+    }
+
+}
@@ -0,0 +1,149 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+@Slf4j
+@Component
+public class TrendingFilmsCounter {
+
+    // подсчет лайков фильмов за последние часы - по кольцевому буферу часовых счетчиков на каждый фильм
+
+    // максимальный период, за который хранятся счетчики лайков
+    public static final Duration MAX_WINDOW = Duration.ofDays(7);
+
+    private static final long SECONDS_PER_BUCKET = Duration.ofHours(1).getSeconds();
+    private static final int BUCKETS = (int) (MAX_WINDOW.getSeconds() / SECONDS_PER_BUCKET);
+
+    // счетчики лайков фильмов - <id фильма, кольцевой буфер счетчиков>
+    private final ConcurrentMap<Integer, FilmBuckets> films = new ConcurrentHashMap<>();
+
+    // учет лайка, поставленного фильму в указанное время
+    public void registerLike(Integer filmId, Instant likedAt) {
+
+        long bucket = toBucket(likedAt);
+
+        if (bucket > toBucket(Instant.now()) - BUCKETS) {
+            films.compute(filmId, (id, buckets) -> {
+                FilmBuckets filmBuckets = (buckets == null) ? new FilmBuckets() : buckets;
+                filmBuckets.add(bucket, 1);
+                return filmBuckets;
+            });
+        }
+    }
+
+    // учет удаления лайка, поставленного фильму в указанное время
+    public void removeLike(Integer filmId, Instant likedAt) {
+
+        FilmBuckets buckets = films.get(filmId);
+
+        if (buckets != null) {
+            buckets.add(toBucket(likedAt), -1);
+        }
+    }
+
+    // получение id фильмов с наибольшим количеством лайков за заданный период (не более MAX_WINDOW)
+    public List<Integer> listTrendingFilmIds(Duration window, int limit) {
+
+        long currentBucket = toBucket(Instant.now());
+        long windowBuckets = Math.min(BUCKETS, Math.max(1, window.getSeconds() / SECONDS_PER_BUCKET));
+        long firstBucket = currentBucket - windowBuckets + 1;
+        long oldestBucket = currentBucket - BUCKETS + 1;
+
+        // отбор limit фильмов с наибольшим количеством лайков - в вершине очереди наименее популярный из отобранных
+        Comparator<FilmLikes> byPopularity = Comparator.comparingLong(FilmLikes::getLikes).reversed()
+                .thenComparing(FilmLikes::getFilmId);
+        PriorityQueue<FilmLikes> top = new PriorityQueue<>(byPopularity.reversed());
+
+        for (Integer filmId : films.keySet()) {
+
+            // удаляем фильмы, у которых не осталось лайков в пределах хранимого периода
+            FilmBuckets buckets = films.computeIfPresent(filmId,
+                    (id, filmBuckets) -> (filmBuckets.sum(oldestBucket, currentBucket) == 0) ? null : filmBuckets);
+
+            long likes = (buckets == null) ? 0 : buckets.sum(firstBucket, currentBucket);
+
+            if (likes > 0 && limit > 0) {
+                top.add(new FilmLikes(filmId, likes));
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            }
+        }
+
+        List<FilmLikes> trending = new ArrayList<>(top);
+        trending.sort(byPopularity);
+
+        List<Integer> filmIds = new ArrayList<>(trending.size());
+        trending.forEach(filmLikes -> filmIds.add(filmLikes.getFilmId()));
+
+        log.info("Найдено фильмов, набирающих популярность за {}: {}", window, filmIds.size());
+
+        return filmIds;
+    }
+
+    // удаление всех счетчиков
+    public void clear() {
+        films.clear();
+    }
+
+    // номер часового интервала, в который попадает момент времени
+    private static long toBucket(Instant instant) {
+        return Math.floorDiv(instant.getEpochSecond(), SECONDS_PER_BUCKET);
+    }
+
+    // кольцевой буфер часовых счетчиков лайков одного фильма
+    private static class FilmBuckets {
+
+        private final int[] bucketIds = new int[BUCKETS]; // номер часа, к которому относится счетчик ячейки
+        private final int[] counts = new int[BUCKETS]; // количество лайков за час
+
+        // изменение счетчика часа; ячейка с устаревшим часом перезаписывается
+        synchronized void add(long bucket, int delta) {
+
+            int slot = (int) Math.floorMod(bucket, (long) BUCKETS);
+
+            if (bucketIds[slot] != bucket) {
+                if (delta < 0 || bucketIds[slot] > bucket) {
+                    return; // счетчик этого часа уже вытеснен из буфера
+                }
+                bucketIds[slot] = (int) bucket;
+                counts[slot] = 0;
+            }
+
+            counts[slot] = Math.max(0, counts[slot] + delta);
+        }
+
+        // сумма счетчиков за часы с первого по последний включительно
+        synchronized long sum(long firstBucket, long lastBucket) {
+
+            long total = 0;
+
+            for (int slot = 0; slot < BUCKETS; slot++) {
+                if (bucketIds[slot] >= firstBucket && bucketIds[slot] <= lastBucket) {
+                    total += counts[slot];
+                }
+            }
+
+            return total;
+        }
+    }
+
+    // количество лайков фильма за период
+    @Value
+    private static class FilmLikes {
+        Integer filmId;
+        long likes;
+    }
+
+}
@@ -0,0 +1,115 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.index.LongHashSet;
+import ru.yandex.practicum.filmorate.storage.index.RoaringIdSet;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+@Component
+public class IdSetFactory {
+
+    // создание наборов id для хранилищ в памяти: filmorate.memory.id-sets=primitive - LongHashSet на массиве long
+    // без упаковки id (по умолчанию), hash - HashSet, roaring - сжатые битовые карты RoaringIdSet
+    // (меньше памяти на больших наборах id)
+
+    private final Class<?> setType;
+    private final Supplier<Set<Long>> newSet;
+
+    public IdSetFactory(@Value("${filmorate.memory.id-sets:primitive}") String idSets) {
+
+        switch (idSets) {
+            case "primitive":
+                setType = LongHashSet.class;
+                newSet = LongHashSet::new;
+                break;
+            case "hash":
+                setType = HashSet.class;
+                newSet = HashSet::new;
+                break;
+            case "roaring":
+                setType = RoaringIdSet.class;
+                newSet = RoaringIdSet::new;
+                break;
+            default:
+                throw new IllegalArgumentException("Неизвестный вид наборов id: " + idSets);
+        }
+    }
+
+    // создание пустого набора id
+    public Set<Long> newIdSet() {
+        return newSet.get();
+    }
+
+    // создание пустого набора id для одновременного изменения из нескольких потоков - набор на ConcurrentHashMap
+    // при любом виде наборов: добавление и удаление не берут общей блокировки набора, а их результат
+    // (изменился ли набор) атомарен; наборы без упаковки и битовые карты так изменять нельзя
+    public Set<Long> newConcurrentIdSet() {
+        return ConcurrentHashMap.newKeySet();
+    }
+
+    // получение набора id выбранного вида - набор другого вида (или null) заменяется копией
+    public Set<Long> toIdSet(Set<Long> ids) {
+
+        if (ids == null) {
+            return newIdSet();
+        }
+        if (setType.isInstance(ids)) {
+            return ids;
+        }
+
+        Set<Long> copy = newIdSet();
+        copy.addAll(ids);
+        return copy;
+    }
+
+    // пересечение наборов id: для битовых карт - без распаковки, иначе проходом по меньшему набору
+    public Set<Long> intersection(Set<Long> first, Set<Long> second) {
+
+        if (first instanceof RoaringIdSet && second instanceof RoaringIdSet) {
+            return RoaringIdSet.and((RoaringIdSet) first, (RoaringIdSet) second);
+        }
+
+        Set<Long> smaller = (first.size() <= second.size()) ? first : second;
+        Set<Long> larger = (smaller == first) ? second : first;
+
+        if (smaller instanceof LongHashSet && larger instanceof LongHashSet) {
+            LongHashSet common = new LongHashSet();
+            ((LongHashSet) smaller).forEachId(id -> {
+                if (((LongHashSet) larger).contains(id)) {
+                    common.add(id);
+                }
+            });
+            return toIdSet(common);
+        }
+
+        return smaller.stream()
+                .filter(larger::contains)
+                .collect(Collectors.toCollection(this::newIdSet));
+    }
+
+    // количество общих id двух наборов - без построения пересечения
+    public int intersectionSize(Set<Long> first, Set<Long> second) {
+
+        if (first instanceof RoaringIdSet && second instanceof RoaringIdSet) {
+            return RoaringIdSet.andCardinality((RoaringIdSet) first, (RoaringIdSet) second);
+        }
+
+        Set<Long> smaller = (first.size() <= second.size()) ? first : second;
+        Set<Long> larger = (smaller == first) ? second : first;
+
+        if (smaller instanceof LongHashSet && larger instanceof LongHashSet) {
+            int[] common = new int[1];
+            ((LongHashSet) smaller).forEachId(id -> common[0] += ((LongHashSet) larger).contains(id) ? 1 : 0);
+            return common[0];
+        }
+
+        return (int) smaller.stream().filter(larger::contains).count();
+    }
+
+}
@@ -0,0 +1,192 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmGenre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.TreeSet;
+
+final class InMemoryBinaryFormat {
+
+    // двоичное представление фильмов, пользователей и наборов id - общее для снимков и журнала изменений;
+    // наборы id отсортированы и записаны разностями в varint
+
+    private static final long NULL_DATE = Long.MIN_VALUE;
+    private static final int NULL_INT = Integer.MIN_VALUE;
+
+    private InMemoryBinaryFormat() {
+    }
+
+    // фильм с рейтингом и жанрами - при чтении они не запрашиваются из справочников
+    static void writeFilm(DataOutputStream out, Film film) throws IOException {
+
+        out.writeInt(film.getId());
+        writeString(out, film.getName());
+        writeString(out, film.getDescription());
+        writeDate(out, film.getReleaseDate());
+        out.writeInt((film.getDuration() == null) ? NULL_INT : film.getDuration());
+        out.writeInt((film.getMpa() == null) ? NULL_INT : film.getMpa().getId());
+        writeString(out, (film.getMpa() == null) ? null : film.getMpa().getName());
+
+        Set<FilmGenre> genres = (film.getGenres() == null) ? Set.of() : film.getGenres();
+        out.writeInt(genres.size());
+        for (FilmGenre genre : genres) {
+            out.writeInt(genre.getId());
+            writeString(out, genre.getName());
+        }
+    }
+
+    static Film readFilm(ByteBuffer buffer) {
+
+        Film.FilmBuilder film = Film.builder()
+                .id(buffer.getInt())
+                .name(readString(buffer))
+                .description(readString(buffer))
+                .releaseDate(readDate(buffer));
+        int duration = buffer.getInt();
+        film.duration((duration == NULL_INT) ? null : duration);
+        int mpaId = buffer.getInt();
+        String mpaName = readString(buffer);
+        film.mpa((mpaId == NULL_INT) ? null : new Mpa(mpaId, mpaName));
+
+        Set<FilmGenre> genres = new TreeSet<>(Comparator.comparing(FilmGenre::getId));
+        int genresCount = buffer.getInt();
+        for (int i = 0; i < genresCount; i++) {
+            genres.add(new FilmGenre(buffer.getInt(), readString(buffer)));
+        }
+
+        return film.genres(genres).build();
+    }
+
+    // пользователь с отсортированными id друзей
+    static void writeUser(DataOutputStream out, User user, long[] sortedFriendIds) throws IOException {
+
+        out.writeLong(user.getId());
+        writeString(out, user.getEmail());
+        writeString(out, user.getName());
+        writeString(out, user.getLogin());
+        writeDate(out, user.getBirthday());
+        writeIds(out, sortedFriendIds);
+    }
+
+    static User readUser(ByteBuffer buffer, Set<Long> friends) {
+
+        User.UserBuilder user = User.builder()
+                .id(buffer.getLong())
+                .email(readString(buffer))
+                .name(readString(buffer))
+                .login(readString(buffer))
+                .birthday(readDate(buffer));
+
+        for (long friendId : readIds(buffer)) {
+            friends.add(friendId);
+        }
+
+        return user.friends(friends).build();
+    }
+
+    static long[] toSortedArray(Set<Long> ids) {
+
+        if (ids == null) {
+            return new long[0];
+        }
+        long[] array = ids.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(array);
+        return array;
+    }
+
+    // набор id: количество и разности соседних id по возрастанию в varint
+    static void writeIds(DataOutputStream out, long[] sortedIds) throws IOException {
+
+        writeVarLong(out, sortedIds.length);
+        long previous = 0;
+        for (long id : sortedIds) {
+            writeVarLong(out, zigZag(id - previous));
+            previous = id;
+        }
+    }
+
+    static long[] readIds(ByteBuffer buffer) {
+
+        long[] ids = new long[(int) readVarLong(buffer)];
+        long previous = 0;
+        for (int i = 0; i < ids.length; i++) {
+            previous += unZigZag(readVarLong(buffer));
+            ids[i] = previous;
+        }
+        return ids;
+    }
+
+    // целое без знака по 7 бит в байте, старший бит - признак продолжения
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer buffer) {
+
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    // отрицательные разности (первый id набора может быть отрицательным) - в положительные
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeDate(DataOutputStream out, LocalDate date) throws IOException {
+        out.writeLong((date == null) ? NULL_DATE : date.toEpochDay());
+    }
+
+    private static LocalDate readDate(ByteBuffer buffer) {
+
+        long epochDay = buffer.getLong();
+        return (epochDay == NULL_DATE) ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+}
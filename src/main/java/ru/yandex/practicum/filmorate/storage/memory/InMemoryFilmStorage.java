@@ -13,6 +13,10 @@ import ru.yandex.practicum.filmorate.storage.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.RatingMpaStorage;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -20,27 +24,31 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class InMemoryFilmStorage implements FilmStorage {
 
-    // реализация хранения информации о фильмах в памяти
+    // реализация хранения информации о фильмах в памяти, безопасная для одновременных запросов:
+    // поиск по id - O(1), id выдаются последовательно, поэтому фильмы по порядку id перебираются
+    // проходом по диапазону id без сортировки
 
-    private final HashMap<Integer, Film> films = new HashMap<>();
+    private final ConcurrentMap<Integer, Film> films = new ConcurrentHashMap<>();
     private final RatingMpaStorage mpaStorage;
     private final FilmGenreStorage filmGenreStorage;
-    private Integer nextId = 1;
+    private final InMemoryLikeCounters likeCounters;
+    private final InMemoryWriteLock writeLock;
+    private final InMemoryWriteAheadLog writeAheadLog;
+    private final AtomicInteger nextId = new AtomicInteger(1);
 
 
     // добавление информации о фильме
     @Override
     public Film addFilm(Film film) {
+        return writeLock.write(() -> {
 
-        Integer filmId = nextId;
-        Film newFilm = film.toBuilder().id(filmId).build();
-        nextId++;
+            Film newFilm = film.toBuilder().id(nextId.getAndIncrement()).build();
 
-        updateFilmData(newFilm);// сохранение информации о фильме
-        log.info("Сохранена информация о фильме: {}", newFilm);
-
-        return newFilm;
+            updateFilmData(newFilm);// сохранение информации о фильме
+            log.info("Сохранена информация о фильме: {}", newFilm);
 
+            return newFilm;
+        });
     }
 
     // проверка сущестования id фильма
@@ -55,67 +63,149 @@ public class InMemoryFilmStorage implements FilmStorage {
     // обновление информации о фильме
     @Override
     public Film updateFilm(Film film) {
+        return writeLock.write(() -> {
 
-        checkFilmId(film.getId());
-        updateFilmData(film); // сохранение обновленной информации
+            checkFilmId(film.getId());
+            updateFilmData(film); // сохранение обновленной информации
 
-        Film updatedFilm = getFilmById(film.getId());
+            Film updatedFilm = getFilmById(film.getId());
 
-        log.info("Обновлена информация о фильме: {}", updatedFilm);
+            log.info("Обновлена информация о фильме: {}", updatedFilm);
 
-        return updatedFilm;
+            return updatedFilm;
+        });
     }
 
     // получение списка фильмов
     @Override
     public List<Film> listFilms() {
 
-        List<Film> listFilms = new ArrayList<>(films.values());
+        List<Film> listFilms = new ArrayList<>(films.size());
+        processFilms(listFilms::add);
 
         log.info("Количество фильмов в списке: {}", listFilms.size());
 
         return listFilms;
     }
 
+    // получение страницы фильмов с id больше afterId
+    @Override
+    public List<Film> listFilmsPage(Integer afterId, int limit) {
+
+        List<Film> page = new ArrayList<>(Math.min(limit, films.size()));
+        int lastId = nextId.get() - 1;
+
+        for (int id = afterId + 1; id <= lastId && page.size() < limit; id++) {
+            Film film = films.get(id);
+            if (film != null) {
+                page.add(withLikes(film));
+            }
+        }
+
+        return page;
+    }
+
+    // обработка всех фильмов в порядке возрастания id
+    @Override
+    public void processFilms(Consumer<Film> action) {
+
+        int lastId = nextId.get() - 1;
+
+        for (int id = 1; id <= lastId; id++) {
+            Film film = films.get(id);
+            if (film != null) {
+                action.accept(withLikes(film));
+            }
+        }
+    }
+
     // получение фильма по идентификатору
     @Override
     public Film getFilmById(Integer filmId) {
 
-        return films.values().stream()
-                .filter(film -> film.getId().equals(filmId))
-                .findFirst()
-                .orElseThrow(() -> new ObjectNotFoundException(String.format("Фильм с id: %d не найден", filmId)));
+        Film film = films.get(filmId);
+
+        if (film == null) {
+            throw new ObjectNotFoundException(String.format("Фильм с id: %d не найден", filmId));
+        }
+
+        return withLikes(film);
     }
 
     // сохранение новой или обновленной информации о фильме
     public void updateFilmData(Film film) {
+        writeLock.write(() -> {
+
+            // получение информации о рейтинге фильма
+            Mpa mpa = mpaStorage.getRatingMpaById(film.getMpa().getId());
+
+            // получение информации о жанре фильма
+            Set<FilmGenre> genres = (film.getGenres() == null) ?
+                    new TreeSet<>(Comparator.comparing(FilmGenre::getId)) : film.getGenres();
+
+            Set<FilmGenre> fullGenres = new TreeSet<>(Comparator.comparing(FilmGenre::getId));
+
+            for (FilmGenre genre : genres) {
+                FilmGenre filmGenre = filmGenreStorage.getGenreById(genre.getId());
+                fullGenres.add(filmGenre);
+            }
+            // обновление и сохранение информации о фильме
+            Film updatedFilm = film.toBuilder().mpa(mpa).genres(fullGenres).build();
+
+            // запись журнала - до сохранения фильма и под блокировкой его ключа: изменения одного фильма попадают
+            // в журнал в том же порядке, в каком сохраняются
+            films.compute(film.getId(), (id, previous) -> {
+                writeAheadLog.append(InMemoryWriteAheadLog.FILM_SAVED,
+                        out -> InMemoryBinaryFormat.writeFilm(out, updatedFilm));
+                return updatedFilm;
+            });
+
+            // фильм, сохраненный с id вне выданного диапазона, тоже попадает в перебор по id
+            nextId.accumulateAndGet(film.getId() + 1, Math::max);
+        });
+    }
 
-        // получение информации о рейтинге фильма
-        Mpa mpa = mpaStorage.getRatingMpaById(film.getMpa().getId());
+    // получение фильмов по списку id в порядке следования в списке
+    @Override
+    public List<Film> listFilmsByIds(List<Integer> filmIds) {
 
-        // получение информации о жанре фильма
-        Set<FilmGenre> genres = (film.getGenres() == null) ?
-                new TreeSet<>(Comparator.comparing(FilmGenre::getId)) : film.getGenres();
+        return filmIds.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .map(this::withLikes)
+                .collect(Collectors.toList());
+    }
 
-        Set<FilmGenre> fullGenres = new TreeSet<>(Comparator.comparing(FilmGenre::getId));
+    // получение количества лайков у всех фильмов
+    @Override
+    public Map<Integer, Long> getFilmsLikesCount() {
 
-        for (FilmGenre genre : genres) {
-            FilmGenre filmGenre = filmGenreStorage.getGenreById(genre.getId());
-            fullGenres.add(filmGenre);
-        }
-        // обновление и сохранение информации о фильме
-        Film updatedFilm = film.toBuilder().mpa(mpa).genres(fullGenres).build();
+        Map<Integer, Long> filmsLikes = new HashMap<>();
 
-        films.put(film.getId(), updatedFilm);
+        films.keySet().forEach(filmId -> filmsLikes.put(filmId, likeCounters.get(filmId)));
+
+        return filmsLikes;
     }
 
-    // получение отсортированного списка наиболее популярных фильмов с учетом заданных ограничений
-    @Override
-    public List<Film> listMostPopularFilms(Integer limit) {
-        return listFilms().stream()
-                .sorted(Comparator.comparing(Film::getLikes, Comparator.nullsLast(Comparator.reverseOrder())))
-                .limit(limit)
-                .collect(Collectors.toList());
+    // восстановление фильма из снимка или журнала изменений - рейтинг и жанры сохранены полностью
+    // и не запрашиваются
+    public void restoreFilm(Film film) {
+
+        films.put(film.getId(), film);
+        nextId.accumulateAndGet(film.getId() + 1, Math::max);
+    }
+
+    // удаление всех фильмов
+    public void clear() {
+
+        films.clear();
+        nextId.set(1);
+    }
+
+    // подстановка в фильм текущего количества лайков из счетчика
+    private Film withLikes(Film film) {
+
+        return film.toBuilder().likes(likeCounters.get(film.getId())).build();
     }
 
 
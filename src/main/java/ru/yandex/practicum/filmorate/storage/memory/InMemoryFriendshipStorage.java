@@ -5,9 +5,12 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.FriendshipStorage;
-import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.index.LongObjectHashMap;
 
 import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Component
@@ -16,80 +19,88 @@ public class InMemoryFriendshipStorage implements FriendshipStorage {
 
 // реализация хранения информации о дружбе пользователей в памяти
 
-    private final UserStorage userStorage;
-    private final Map<Long, Set<Long>> mutualFriendsMap;
+    private final InMemoryUserStorage userStorage; // пользователи и их заявки - в том же хранилище в памяти
+    private final IdSetFactory idSets;
+    private final InMemoryWriteLock writeLock;
+    private final InMemoryWriteAheadLog writeAheadLog;
+
+    // взаимные друзья пользователей - <id пользователя, набор id взаимных друзей>, ключи без упаковки
+    private final LongObjectHashMap<Set<Long>> mutualFriendsMap = new LongObjectHashMap<>();
+
+    // наборы друзей и взаимных друзей не изменяются после сохранения - изменение сохраняет копию набора, поэтому
+    // читающие потоки перебирают наборы без блокировки; изменения дружбы выполняются по одному
+    // (блокировка writeLock разделяемая), чтобы два изменения одного набора не копировали одну и ту же версию
+    private final Object friendshipChanges = new Object();
 
     // добавление друга пользователя
     @Override
     public void addFriend(Long userId, Long friendId) {
+        writeLock.write(() -> {
+            synchronized (friendshipChanges) {
 
-        // проверка существования id пользователей, получение списка друзей пользователей
-        Set<Long> userFriends = listUserFriends(userId);
-        Set<Long> friendFriends = listUserFriends(friendId);
-
-        // добавляем друга пользователю, обновляем информацию о пользователе в хранилище
-        userFriends.add(friendId);
-        User updatedUser = userStorage.getUserById(userId).toBuilder().friends(userFriends).build();
-        userStorage.updateUserProperties(updatedUser);
-        log.info("Пользователь {} подал заявку на дружбу с {}", userId, friendId);
-
-        // проверяем наличие заявки на дружбу у потенциального друга
-        if (friendFriends.contains(userId)) {
+                // проверка существования id пользователей, получение списка друзей пользователей
+                User user = userStorage.getUserById(userId);
+                Set<Long> friendFriends = returnEmptyCollectionIfNull(userStorage.getUserById(friendId).getFriends());
 
-            // сохраняем информацию о взаимной дружбе
+                // добавляем друга в копию списка друзей пользователя, обновляем информацию о пользователе в хранилище
+                Set<Long> userFriends = copyIdSet(user.getFriends());
+                userFriends.add(friendId);
+                userStorage.updateUserProperties(user.toBuilder().friends(userFriends).build());
+                log.info("Пользователь {} подал заявку на дружбу с {}", userId, friendId);
 
-            Set<Long> mutualUserFriends = returnEmptyCollectionIfNull(mutualFriendsMap.get(userId));
-            Set<Long> mutualFriendFriends = returnEmptyCollectionIfNull(mutualFriendsMap.get(friendId));
+                // проверяем наличие заявки на дружбу у потенциального друга
+                if (friendFriends.contains(userId)) {
 
-            mutualUserFriends.add(friendId);
-            mutualFriendFriends.add(userId);
-            mutualFriendsMap.put(userId, mutualUserFriends);
-            mutualFriendsMap.put(friendId, mutualFriendFriends);
+                    // сохраняем информацию о взаимной дружбе
+                    logFriendship(InMemoryWriteAheadLog.FRIENDSHIP_CONFIRMED, userId, friendId);
+                    updateMutualFriends(userId, friends -> friends.add(friendId));
+                    updateMutualFriends(friendId, friends -> friends.add(userId));
 
-            log.info("Пользователи {} и {} дружат взаимно", userId, friendId);
-
-        }
+                    log.info("Пользователи {} и {} дружат взаимно", userId, friendId);
 
+                }
+            }
+        });
     }
 
 
     // удаление друга пользователя
     @Override
     public void deleteFriend(Long userId, Long friendId) {
-        // проверка существования id пользователей, получение списка друзей пользователей
-        Set<Long> userFriends = listUserFriends(userId);
-        Set<Long> friendFriends = listUserFriends(friendId);
+        writeLock.write(() -> {
+            synchronized (friendshipChanges) {
 
-        // удаляем заявку на дружбу у пользователя и обновляем его данные в хранилище
-        userFriends.remove(friendId);
-        User updatedUser = userStorage.getUserById(userId).toBuilder().friends(userFriends).build();
-        userStorage.updateUserProperties(updatedUser);
-        log.info("Пользователь {} удалил заявку на дружбу с {}", userId, friendId);
+                // проверка существования id пользователей, получение списка друзей пользователей
+                User user = userStorage.getUserById(userId);
+                Set<Long> friendFriends = returnEmptyCollectionIfNull(userStorage.getUserById(friendId).getFriends());
 
-        // проверяем наличие заявки на дружбу у потенциального друга
-        if (friendFriends.contains(userId)) {
+                // удаляем заявку на дружбу из копии списка друзей пользователя и обновляем его данные в хранилище
+                Set<Long> userFriends = copyIdSet(user.getFriends());
+                userFriends.remove(friendId);
+                userStorage.updateUserProperties(user.toBuilder().friends(userFriends).build());
+                log.info("Пользователь {} удалил заявку на дружбу с {}", userId, friendId);
 
-            // удаляем информацию о взаимной дружбе между пользователями
-            Set<Long> mutualUserFriends = returnEmptyCollectionIfNull(mutualFriendsMap.get(userId));
-            Set<Long> mutualFriendFriends = returnEmptyCollectionIfNull(mutualFriendsMap.get(friendId));
+                // проверяем наличие заявки на дружбу у потенциального друга
+                if (friendFriends.contains(userId)) {
 
-            mutualUserFriends.remove(friendId);
-            mutualFriendFriends.remove(userId);
-            mutualFriendsMap.put(userId, mutualUserFriends);
-            mutualFriendsMap.put(friendId, mutualFriendFriends);
+                    // удаляем информацию о взаимной дружбе между пользователями
+                    logFriendship(InMemoryWriteAheadLog.FRIENDSHIP_UNCONFIRMED, userId, friendId);
+                    updateMutualFriends(userId, friends -> friends.remove(friendId));
+                    updateMutualFriends(friendId, friends -> friends.remove(userId));
 
-            log.info("Пользователь {} удалил дружбу с {}", userId, friendId);
-
-        }
+                    log.info("Пользователь {} удалил дружбу с {}", userId, friendId);
 
+                }
+            }
+        });
     }
 
-    // получение списка друзей пользователя
+    // получение списка друзей пользователя - набор только для чтения, так как он хранится в пользователе
     @Override
     public Set<Long> listUserFriends(Long userId) {
 
         User user = userStorage.getUserById(userId);
-        Set<Long> userFriends = returnEmptyCollectionIfNull(user.getFriends());
+        Set<Long> userFriends = Collections.unmodifiableSet(returnEmptyCollectionIfNull(user.getFriends()));
 
         log.info("У пользователя {} {} друзей в списке", user, userFriends.size());
 
@@ -106,11 +117,11 @@ public class InMemoryFriendshipStorage implements FriendshipStorage {
         User other = userStorage.getUserById(otherId);
 
         // получаем списки id друзей
-        HashSet<Long> commonFriends = new HashSet<>(returnEmptyCollectionIfNull(user.getFriends()));
-        HashSet<Long> friendFriends = new HashSet<>(returnEmptyCollectionIfNull(other.getFriends()));
+        Set<Long> userFriends = returnEmptyCollectionIfNull(user.getFriends());
+        Set<Long> otherFriends = returnEmptyCollectionIfNull(other.getFriends());
 
-        // оставляем в коллекции только id общих друзей
-        commonFriends.retainAll(friendFriends);
+        // пересекаем списки без копирования: битовые карты - поблочно, иначе проходом по меньшему списку
+        Set<Long> commonFriends = idSets.intersection(userFriends, otherFriends);
 
         log.info("Общих друзей в списке у пользователей {} и {} : {}", user, other, commonFriends.size());
 
@@ -118,17 +129,111 @@ public class InMemoryFriendshipStorage implements FriendshipStorage {
         return commonFriends;
     }
 
+    // подсчет друзей пользователя
+    @Override
+    public int countUserFriends(Long userId) {
+
+        return returnEmptyCollectionIfNull(userStorage.getUserById(userId).getFriends()).size();
+    }
+
+    // подсчет общих друзей пользователей - без построения списка общих друзей
+    @Override
+    public int countCommonFriends(Long userId, Long otherId) {
+
+        Set<Long> userFriends = returnEmptyCollectionIfNull(userStorage.getUserById(userId).getFriends());
+        Set<Long> otherFriends = returnEmptyCollectionIfNull(userStorage.getUserById(otherId).getFriends());
+
+        return idSets.intersectionSize(userFriends, otherFriends);
+    }
+
+    // получение рекомендаций друзей - друзей друзей пользователя по убыванию количества общих друзей;
+    // обход ограничен так же, как для графа базы данных (MAX_SUGGESTION_EDGES, MAX_SUGGESTION_CANDIDATES)
+    @Override
+    public List<Long> listFriendSuggestions(Long userId, int limit) {
+
+        return userStorage.getFriendGraph().listFriendSuggestions(userId, limit);
+    }
+
+    // поиск кратчайшей цепочки друзей двунаправленным обходом в ширину с ограничением MAX_PATH_VISITED
+    @Override
+    public List<Long> findFriendshipPath(Long userId, Long otherId, int maxHops) {
+
+        return Arrays.stream(userStorage.getFriendGraph().findPath(userId, otherId, maxHops))
+                .boxed()
+                .collect(Collectors.toList());
+    }
+
     // получение информации о наличии взаимной дружбы между пользователями
     public Boolean isFriendshipConfirmed(Long userId, Long friendId) {
 
-        return mutualFriendsMap.containsKey(userId) && mutualFriendsMap.get(userId).contains(friendId);
+        Set<Long> mutualFriends;
+        synchronized (friendshipChanges) { // таблица взаимных друзей не допускает чтения одновременно с изменением
+            mutualFriends = mutualFriendsMap.get(userId);
+        }
+        return mutualFriends != null && mutualFriends.contains(friendId);
+    }
+
+
+    // обработка взаимных друзей по пользователям - для снимка
+    public void processMutualFriends(BiConsumer<Long, long[]> action) {
+
+        mutualFriendsMap.forEach((userId, friends) -> {
+            if (!friends.isEmpty()) {
+                action.accept(userId, friends.stream().mapToLong(Long::longValue).sorted().toArray());
+            }
+        });
+    }
+
+    // восстановление взаимной дружбы пользователей из снимка или журнала изменений
+    public void restoreMutualFriendship(Long userId, Long friendId) {
+
+        mutualFriendsMap.computeIfAbsent(userId, id -> idSets.newIdSet()).add(friendId);
+        mutualFriendsMap.computeIfAbsent(friendId, id -> idSets.newIdSet()).add(userId);
+    }
+
+    // повторение удаления взаимной дружбы из журнала изменений
+    public void restoreUnconfirmedFriendship(Long userId, Long friendId) {
+
+        Optional.ofNullable(mutualFriendsMap.get(userId)).ifPresent(friends -> friends.remove(friendId));
+        Optional.ofNullable(mutualFriendsMap.get(friendId)).ifPresent(friends -> friends.remove(userId));
+    }
+
+    // удаление информации о взаимной дружбе
+    public void clear() {
+        mutualFriendsMap.clear();
+    }
+
+    // изменение копии набора взаимных друзей пользователя и сохранение копии вместо прежнего набора
+    private void updateMutualFriends(Long userId, Consumer<Set<Long>> change) {
+
+        Set<Long> mutualFriends = copyIdSet(mutualFriendsMap.get(userId));
+        change.accept(mutualFriends);
+        mutualFriendsMap.put(userId, mutualFriends);
     }
 
+    // копия набора id для изменения - сохраненные наборы не изменяются на месте
+    private Set<Long> copyIdSet(Set<Long> ids) {
+
+        Set<Long> copy = idSets.newIdSet();
+        if (ids != null) {
+            copy.addAll(ids);
+        }
+        return copy;
+    }
+
+    // запись изменения взаимной дружбы в журнал изменений
+    private void logFriendship(byte type, Long userId, Long friendId) {
+
+        writeAheadLog.append(type, out -> {
+            out.writeLong(userId);
+            out.writeLong(friendId);
+        });
+    }
 
     // проверка на null и возврат пустой коллекции
     private Set<Long> returnEmptyCollectionIfNull(Set<Long> set) {
 
-        return (set == null) ? new HashSet<>() : set;
+        return (set == null) ? idSets.newIdSet() : set;
     }
 
 
@@ -0,0 +1,54 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+@Component
+public class InMemoryLikeCounters {
+
+    // счетчики лайков фильмов для хранилищ в памяти: лайк меняет только счетчик фильма, а количество лайков
+    // в объекте фильма подставляется из счетчика при чтении; LongAdder распределяет одновременные изменения
+    // по нескольким ячейкам, а лайк меняет счетчик вне блокировок - лайки одного фильма из разных потоков
+    // не ждут друг друга
+
+    // счетчики лайков - <id фильма, счетчик>
+    private final ConcurrentMap<Integer, LongAdder> counters = new ConcurrentHashMap<>();
+
+    // увеличение счетчика лайков фильма
+    public void increment(Integer filmId) {
+        getCounter(filmId).increment();
+    }
+
+    // уменьшение счетчика лайков фильма
+    public void decrement(Integer filmId) {
+        getCounter(filmId).decrement();
+    }
+
+    // изменение счетчика лайков фильма на заданную величину
+    public void add(Integer filmId, long delta) {
+        getCounter(filmId).add(delta);
+    }
+
+    // удаление всех счетчиков
+    public void clear() {
+        counters.clear();
+    }
+
+    // получение количества лайков фильма
+    public long get(Integer filmId) {
+
+        LongAdder counter = counters.get(filmId);
+        return (counter == null) ? 0L : counter.sum();
+    }
+
+    // получение счетчика фильма - без блокировки, если счетчик уже создан
+    private LongAdder getCounter(Integer filmId) {
+
+        LongAdder counter = counters.get(filmId);
+        return (counter != null) ? counter : counters.computeIfAbsent(filmId, id -> new LongAdder());
+    }
+
+}
@@ -4,106 +4,171 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.stereotype.Component;
-import ru.yandex.practicum.filmorate.model.Film;
-import ru.yandex.practicum.filmorate.storage.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.LikeStorage;
 
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class InMemoryLikeStorage implements LikeStorage {
 
-    // реализация хранения информации о лайках в памяти
-
-    private final FilmStorage filmStorage;
+    // реализация хранения информации о лайках в памяти - лайк добавляет пользователя в набор поставивших лайки
+    // и меняет счетчик фильма, объект фильма при этом не пересобирается
+    //
+    // лайк не берет ни общей блокировки, ни блокировки фильма: проверка повторного лайка - результат добавления
+    // в конкурентный набор, счетчик LongAdder увеличивается вне блокировок; InMemoryWriteLock согласует лайк
+    // только со снимком и берет для этого часть блокировки своего потока; при включенном журнале изменений
+    // лайк возвращает управление после сброса своей записи на диск
+    //
+    // записи лайков одного фильма попадают в журнал не в том порядке, в каком менялся набор, но порядок
+    // не нужен: успешные добавления и удаления лайка одного пользователя чередуются, поэтому при восстановлении
+    // по записям считается сумма изменений каждой пары (+1 добавление, -1 удаление), и лайк есть, если он был
+    // в снимке и сумма 0 или его не было и сумма 1
+
+    private final IdSetFactory idSets;
+    private final InMemoryLikeCounters likeCounters;
+    private final InMemoryWriteLock writeLock;
+    private final InMemoryWriteAheadLog writeAheadLog;
 
     // информация о лайках - <id фильма, <cписок пользователей, поставивших лайки фильму>
-    private final Map<Integer, Set<Long>> likes = new HashMap<>();
+    private final ConcurrentMap<Integer, Set<Long>> likes = new ConcurrentHashMap<>();
+
+    // изменения лайков из журнала, еще не примененные к наборам - <id фильма, <id пользователя, сумма изменений>>
+    private final Map<Integer, Map<Long, Integer>> replayedLikes = new HashMap<>();
 
     // добавление лайка
     @Override
     public void addLike(Integer filmId, Long userId) {
-
-        // получаем список пользователей, поставивших лайки фильму
-        Set<Long> filmLikesByUsers = getFilmLikesByUsers(filmId);
-
-        // добавляем лайк от пользователя в случае отсутствия лайков
-        if (!filmLikesByUsers.contains(userId)) {
-            // добавляем пользователя в список поставивших лайки
-            filmLikesByUsers.add(userId);
-
-            // обновляем список поставивших лайки для фильма
-            likes.put(filmId, filmLikesByUsers);
-
-        } else {
-
-            throw new RuntimeException("Вы уже ставили лайк этому фильму");
-        }
-
-        // обновление данных о фильме в хранилище фильмов
-        updateFilmLikes(filmId);
-
-        log.info("Пользователь {} поставил лайк фильму {}", userId, filmId);
-
+        writeLock.write(() -> {
+
+            // добавляем пользователя в список поставивших лайки, если его там еще нет
+            Set<Long> filmLikes = getFilmLikesByUsers(filmId);
+            if (!filmLikes.add(userId)) {
+
+                throw new RuntimeException("Вы уже ставили лайк этому фильму");
+            }
+
+            // лайк, не записанный в журнал, отменяется
+            try {
+                logLike(InMemoryWriteAheadLog.LIKE_ADDED, filmId, userId);
+            } catch (RuntimeException e) {
+                filmLikes.remove(userId);
+                throw e;
+            }
+            likeCounters.increment(filmId);
+
+            log.info("Пользователь {} поставил лайк фильму {}", userId, filmId);
+        });
     }
 
     // удаление лайка
     @Override
     public void deleteLike(Integer filmId, Long userId) {
+        writeLock.write(() -> {
+
+            // удаляем пользователя из списка поставивших лайки, если он там есть
+            Set<Long> filmLikes = getFilmLikesByUsers(filmId);
+            if (!filmLikes.remove(userId)) {
+
+                throw new RuntimeException("Вы не ставили лайк этому фильму");
+            }
+
+            try {
+                logLike(InMemoryWriteAheadLog.LIKE_DELETED, filmId, userId);
+            } catch (RuntimeException e) {
+                filmLikes.add(userId);
+                throw e;
+            }
+            likeCounters.decrement(filmId);
+
+            log.info("Пользователь {} удалил лайк у фильма {}",
+                    userId, filmId);
+        });
+    }
 
-        // получаем список пользователей, поставивших лайки фильму
-        Set<Long> filmLikesByUsers = getFilmLikesByUsers(filmId);
-
-        if (filmLikesByUsers.contains(userId)) {
+    // подсчет лайков определенному фильму от всех пользователей
+    @Override
+    public Long getFilmLikesTotalCount(Integer filmId) {
 
-            // удаляем пользователя из списка поставивших лайки
-            filmLikesByUsers.remove(userId);
-            // обновляем список поставивших лайки для фильма
-            likes.put(filmId, filmLikesByUsers);
+        return likeCounters.get(filmId);
 
-        } else {
+    }
 
-            throw new RuntimeException("Вы не ставили лайк этому фильму");
-        }
+    // обработка id пользователей, поставивших лайки, по фильмам - для снимка
+    public void processFilmsLikes(BiConsumer<Integer, long[]> action) {
 
-        // обновление данных о фильме в хранилище
-        updateFilmLikes(filmId);
+        likes.forEach((filmId, filmLikes) -> {
+            if (!filmLikes.isEmpty()) {
+                action.accept(filmId, filmLikes.stream().mapToLong(Long::longValue).toArray());
+            }
+        });
+    }
 
-        log.info("Пользователь {} удалил лайк у фильма {}",
-                userId, filmId);
+    // восстановление лайков фильма из снимка
+    public void restoreFilmLikes(Integer filmId, long[] userIds) {
 
+        Set<Long> filmLikes = getFilmLikesByUsers(filmId);
+        for (long userId : userIds) {
+            filmLikes.add(userId);
+        }
+        likeCounters.add(filmId, userIds.length);
     }
 
-    // подсчет лайков определенному фильму от всех пользователей
-    @Override
-    public Long getFilmLikesTotalCount(Integer filmId) {
+    // учет добавления или удаления лайка из журнала изменений - применяется после чтения всего журнала
+    public void restoreLike(Integer filmId, Long userId, boolean liked) {
 
-        Set<Long> filmLikesByUsers = getFilmLikesByUsers(filmId);
-        return (long) filmLikesByUsers.size(); // считаем количество лайков у фильма
+        replayedLikes.computeIfAbsent(filmId, id -> new HashMap<>()).merge(userId, liked ? 1 : -1, Integer::sum);
+    }
 
+    // применение изменений лайков из журнала к наборам, восстановленным из снимка
+    public void applyReplayedLikes() {
+
+        replayedLikes.forEach((filmId, changes) -> {
+
+            Set<Long> filmLikes = getFilmLikesByUsers(filmId);
+            changes.forEach((userId, change) -> {
+
+                int liked = (filmLikes.contains(userId) ? 1 : 0) + change;
+                if (liked == 1 && filmLikes.add(userId)) {
+                    likeCounters.increment(filmId);
+                } else if (liked == 0 && filmLikes.remove(userId)) {
+                    likeCounters.decrement(filmId);
+                } else if (liked != 0 && liked != 1) {
+                    log.warn("Изменения лайка пользователя {} фильму {} в журнале не чередуются", userId, filmId);
+                }
+            });
+        });
+        replayedLikes.clear();
     }
 
-    // возвращение информации о лайках определенному фильму от пользователей
-    private Set<Long> getFilmLikesByUsers(Integer filmId) {
+    // удаление всех лайков
+    public void clear() {
 
-        return likes.computeIfAbsent(filmId, set -> new HashSet<>());
+        likes.clear();
+        replayedLikes.clear();
+        likeCounters.clear();
     }
 
-    // создание объекта фильма с обновленным количеством лайков и сохранение информации в хранилище фильмов
-    private void updateFilmLikes(Integer filmId) {
+    // запись добавления или удаления лайка в журнал изменений
+    private void logLike(byte type, Integer filmId, Long userId) {
 
-        Film film = filmStorage.getFilmById(filmId).toBuilder()
-                .likes(getFilmLikesTotalCount(filmId))
-                .build();
+        writeAheadLog.append(type, out -> {
+            out.writeInt(filmId);
+            out.writeLong(userId);
+        });
+    }
 
-        filmStorage.updateFilmData(film);
+    // возвращение информации о лайках определенному фильму от пользователей
+    private Set<Long> getFilmLikesByUsers(Integer filmId) {
 
+        Set<Long> filmLikes = likes.get(filmId);
+        return (filmLikes != null) ? filmLikes : likes.computeIfAbsent(filmId, id -> idSets.newConcurrentIdSet());
     }
 
-
 }
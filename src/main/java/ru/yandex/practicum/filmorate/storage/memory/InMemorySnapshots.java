@@ -0,0 +1,360 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class InMemorySnapshots {
+
+    // снимки хранилищ в памяти (фильмы, пользователи с друзьями, взаимная дружба, лайки) в двоичном файле:
+    // снимок пишется периодически и при остановке приложения, при запуске загружается через MappedByteBuffer,
+    // после чего применяются записи журнала изменений с номером больше номера снимка;
+    // включается параметром filmorate.memory.snapshot.path
+    //
+    // формат файла: заголовок HEADER_SIZE байт - MAGIC, VERSION, время снимка, номер последней записи журнала
+    // изменений, вошедшей в снимок, длина данных, CRC32 данных; данные - фильмы, пользователи, взаимная дружба,
+    // лайки (версия 1 - без номера записи журнала и взаимной дружбы - не поддерживается)
+
+    static final int MAGIC = 0x464C4D53; // "FLMS"
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 40;
+
+    private final InMemoryFilmStorage filmStorage;
+    private final InMemoryUserStorage userStorage;
+    private final InMemoryLikeStorage likeStorage;
+    private final InMemoryFriendshipStorage friendshipStorage;
+    private final InMemoryWriteLock writeLock;
+    private final InMemoryWriteAheadLog writeAheadLog;
+    private final IdSetFactory idSets;
+
+    @Value("${filmorate.memory.snapshot.path:}")
+    private String snapshotPath;
+
+    // восстановление хранилищ при запуске приложения
+    @PostConstruct
+    public void init() {
+        recover();
+    }
+
+    // периодическая запись снимка
+    @Scheduled(initialDelayString = "${filmorate.memory.snapshot.interval-ms:300000}",
+            fixedDelayString = "${filmorate.memory.snapshot.interval-ms:300000}")
+    public void scheduledSnapshot() {
+
+        if (isEnabled()) {
+            write(Path.of(snapshotPath));
+        }
+    }
+
+    // запись снимка при остановке приложения
+    @PreDestroy
+    public void shutdown() {
+        scheduledSnapshot();
+    }
+
+    // восстановление хранилищ: последний снимок и записи журнала изменений после него
+    public void recover() {
+
+        writeLock.exclusive(() -> {
+
+            clearStorages();
+
+            Path file = isEnabled() ? Path.of(snapshotPath) : null;
+            long snapshotLsn = (file != null && Files.exists(file)) ? restore(file).lsn : 0;
+
+            long records = writeAheadLog.recover(snapshotLsn, this::applyRecord);
+            likeStorage.applyReplayedLikes();
+            userStorage.loadFriendGraph();
+            return records;
+        });
+    }
+
+    // запись снимка: данные копируются при остановленных изменениях хранилищ (журнал изменений продолжается
+    // в новом сегменте), файл пишется после возобновления изменений во временный файл и заменяет прежний
+    // снимок целиком, после чего сегменты журнала, вошедшие в снимок, удаляются
+    public synchronized long write(Path file) {
+
+        long start = System.currentTimeMillis();
+        Snapshot snapshot = writeLock.exclusive(() -> {
+            Snapshot copy = copyStorages();
+            copy.lsn = writeAheadLog.rotate();
+            return copy;
+        });
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            CRC32 crc = new CRC32();
+            channel.position(HEADER_SIZE);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(Channels.newOutputStream(channel), crc), 1 << 16));
+            writeBody(out, snapshot);
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                    .putInt(MAGIC)
+                    .putInt(VERSION)
+                    .putLong(start)
+                    .putLong(snapshot.lsn)
+                    .putLong(channel.position() - HEADER_SIZE)
+                    .putInt((int) crc.getValue());
+            header.flip();
+            channel.write(header, 0);
+            channel.force(true);
+
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось записать снимок " + file, e);
+        }
+
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось записать снимок " + file, e);
+        }
+
+        writeAheadLog.deleteSegmentsUpTo(snapshot.lsn);
+
+        log.info("Записан снимок {}: записей {}, номер записи журнала {}, {} мс", file, snapshot.records,
+                snapshot.lsn, System.currentTimeMillis() - start);
+        return snapshot.records;
+    }
+
+    // загрузка снимка - содержимое хранилищ заменяется содержимым снимка, журнал изменений не применяется
+    public long load(Path file) {
+        return writeLock.exclusive(() -> {
+            Snapshot loaded = restore(file);
+            userStorage.loadFriendGraph();
+            return loaded;
+        }).records;
+    }
+
+    private boolean isEnabled() {
+        return snapshotPath != null && !snapshotPath.isBlank();
+    }
+
+    private void clearStorages() {
+
+        filmStorage.clear();
+        userStorage.clear();
+        likeStorage.clear();
+        friendshipStorage.clear();
+    }
+
+    // проверка и загрузка файла снимка
+    private Snapshot restore(Path file) {
+
+        long start = System.currentTimeMillis();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IllegalStateException("Файл снимка поврежден: " + file);
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Файл снимка больше 2 ГБ: " + file);
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            int magic = buffer.getInt();
+            int version = buffer.getInt();
+            buffer.getLong(); // время снимка
+            long lsn = buffer.getLong();
+            long bodyLength = buffer.getLong();
+            int checksum = buffer.getInt();
+
+            if (magic != MAGIC) {
+                throw new IllegalStateException("Файл не является снимком: " + file);
+            }
+            if (version != VERSION) {
+                throw new IllegalStateException(String.format("Неподдерживаемая версия снимка %d: %s", version, file));
+            }
+            if (bodyLength != size - HEADER_SIZE) {
+                throw new IllegalStateException("Файл снимка поврежден: " + file);
+            }
+
+            buffer.position(HEADER_SIZE);
+            CRC32 crc = new CRC32();
+            crc.update(buffer.slice());
+            if ((int) crc.getValue() != checksum) {
+                throw new IllegalStateException("Контрольная сумма снимка не совпадает: " + file);
+            }
+
+            clearStorages();
+            Snapshot loaded = new Snapshot();
+            loaded.records = restoreStorages(buffer);
+            loaded.lsn = lsn;
+
+            log.info("Загружен снимок {}: записей {}, номер записи журнала {}, {} мс", file, loaded.records, lsn,
+                    System.currentTimeMillis() - start);
+            return loaded;
+
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось прочитать снимок " + file, e);
+        }
+    }
+
+    // копирование содержимого хранилищ - наборы id копируются в отсортированные массивы формата снимка
+    private Snapshot copyStorages() {
+
+        Snapshot snapshot = new Snapshot();
+
+        filmStorage.processFilms(snapshot.films::add);
+        userStorage.processUsers(user -> {
+            snapshot.users.add(user);
+            snapshot.friends.add(InMemoryBinaryFormat.toSortedArray(user.getFriends()));
+        });
+        friendshipStorage.processMutualFriends((userId, friendIds) -> {
+            snapshot.mutualUserIds.add(userId);
+            snapshot.mutualFriends.add(friendIds);
+        });
+        likeStorage.processFilmsLikes((filmId, userIds) -> {
+            Arrays.sort(userIds);
+            snapshot.likedFilmIds.add(filmId);
+            snapshot.likes.add(userIds);
+        });
+
+        snapshot.records = snapshot.films.size() + snapshot.users.size()
+                + snapshot.friends.stream().mapToLong(ids -> ids.length).sum()
+                + snapshot.likes.stream().mapToLong(ids -> ids.length).sum();
+
+        return snapshot;
+    }
+
+    private void writeBody(DataOutputStream out, Snapshot snapshot) throws IOException {
+
+        out.writeInt(snapshot.films.size());
+        for (Film film : snapshot.films) {
+            InMemoryBinaryFormat.writeFilm(out, film);
+        }
+
+        out.writeInt(snapshot.users.size());
+        for (int i = 0; i < snapshot.users.size(); i++) {
+            InMemoryBinaryFormat.writeUser(out, snapshot.users.get(i), snapshot.friends.get(i));
+        }
+
+        out.writeInt(snapshot.mutualFriends.size());
+        for (int i = 0; i < snapshot.mutualFriends.size(); i++) {
+            out.writeLong(snapshot.mutualUserIds.get(i));
+            InMemoryBinaryFormat.writeIds(out, snapshot.mutualFriends.get(i));
+        }
+
+        out.writeInt(snapshot.likes.size());
+        for (int i = 0; i < snapshot.likes.size(); i++) {
+            out.writeInt(snapshot.likedFilmIds.get(i));
+            InMemoryBinaryFormat.writeIds(out, snapshot.likes.get(i));
+        }
+    }
+
+    // восстановление хранилищ из данных снимка
+    private long restoreStorages(ByteBuffer buffer) {
+
+        long records = 0;
+
+        int filmsCount = buffer.getInt();
+        for (int i = 0; i < filmsCount; i++) {
+            filmStorage.restoreFilm(InMemoryBinaryFormat.readFilm(buffer));
+            records++;
+        }
+
+        int usersCount = buffer.getInt();
+        for (int i = 0; i < usersCount; i++) {
+            User user = InMemoryBinaryFormat.readUser(buffer, idSets.newIdSet());
+            userStorage.restoreUser(user);
+            records += 1 + user.getFriends().size();
+        }
+
+        int mutualCount = buffer.getInt();
+        for (int i = 0; i < mutualCount; i++) {
+            long userId = buffer.getLong();
+            for (long friendId : InMemoryBinaryFormat.readIds(buffer)) {
+                friendshipStorage.restoreMutualFriendship(userId, friendId);
+            }
+        }
+
+        int likedFilmsCount = buffer.getInt();
+        for (int i = 0; i < likedFilmsCount; i++) {
+            int filmId = buffer.getInt();
+            long[] userIds = InMemoryBinaryFormat.readIds(buffer);
+            likeStorage.restoreFilmLikes(filmId, userIds);
+            records += userIds.length;
+        }
+
+        if (buffer.hasRemaining()) {
+            throw new IllegalStateException("Файл снимка поврежден: лишние данные после лайков");
+        }
+
+        return records;
+    }
+
+    // применение записи журнала изменений
+    private void applyRecord(byte type, ByteBuffer body) {
+
+        switch (type) {
+            case InMemoryWriteAheadLog.FILM_SAVED:
+                filmStorage.restoreFilm(InMemoryBinaryFormat.readFilm(body));
+                break;
+            case InMemoryWriteAheadLog.USER_SAVED:
+                userStorage.restoreUser(InMemoryBinaryFormat.readUser(body, idSets.newIdSet()));
+                break;
+            case InMemoryWriteAheadLog.LIKE_ADDED:
+                likeStorage.restoreLike(body.getInt(), body.getLong(), true);
+                break;
+            case InMemoryWriteAheadLog.LIKE_DELETED:
+                likeStorage.restoreLike(body.getInt(), body.getLong(), false);
+                break;
+            case InMemoryWriteAheadLog.FRIENDSHIP_CONFIRMED:
+                friendshipStorage.restoreMutualFriendship(body.getLong(), body.getLong());
+                break;
+            case InMemoryWriteAheadLog.FRIENDSHIP_UNCONFIRMED:
+                friendshipStorage.restoreUnconfirmedFriendship(body.getLong(), body.getLong());
+                break;
+            default:
+                throw new IllegalStateException("Неизвестный вид записи журнала изменений: " + type);
+        }
+    }
+
+    // содержимое хранилищ, скопированное для записи снимка или загруженное из него
+    private static final class Snapshot {
+
+        final List<Film> films = new ArrayList<>();
+        final List<User> users = new ArrayList<>();
+        final List<long[]> friends = new ArrayList<>();
+        final List<Long> mutualUserIds = new ArrayList<>();
+        final List<long[]> mutualFriends = new ArrayList<>();
+        final List<Integer> likedFilmIds = new ArrayList<>();
+        final List<long[]> likes = new ArrayList<>();
+        long records;
+        long lsn;
+    }
+
+}
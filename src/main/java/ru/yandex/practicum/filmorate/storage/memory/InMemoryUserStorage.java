@@ -1,48 +1,75 @@
 package ru.yandex.practicum.filmorate.storage.memory;
 
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exceptions.ObjectNotFoundException;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.index.FriendGraphIndex;
+import ru.yandex.practicum.filmorate.storage.index.LongObjectHashMap;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 
 @Slf4j
 @Component
-
+@RequiredArgsConstructor
 public class InMemoryUserStorage implements UserStorage {
 
     // реализация хранения информации о пользователях в памяти
 
-    private final HashMap<Long, User> users = new HashMap<>();
+    // количество пользователей, обрабатываемых за одну блокировку при переборе всех пользователей
+    private static final int PROCESS_PAGE_SIZE = 1024;
+
+    // пользователи по id - ключи без упаковки; id выдаются подряд, поэтому перебор по возрастанию id
+    // идет по диапазону 1..nextId-1
+    private final LongObjectHashMap<User> users = new LongObjectHashMap<>();
+    private final InMemoryWriteLock writeLock;
+    private final InMemoryWriteAheadLog writeAheadLog;
+
+    // блокировка таблицы пользователей и счетчика id: LongObjectHashMap не допускает чтения одновременно
+    // с изменением, а изменения хранилищ выполняются под разделяемой блокировкой writeLock
+    private final ReentrantReadWriteLock usersLock = new ReentrantReadWriteLock();
 
-    private Long nextId = 1L;
+    // граф дружбы пользователей этого хранилища - отдельный от графа базы данных, так как id пользователей
+    // в памяти и в базе данных независимы; обновляется вместе со списком друзей пользователя
+    private final FriendGraphIndex friendGraph = new FriendGraphIndex();
+
+    private long nextId = 1L;
 
     //добавление информации о пользователе
     @Override
     public User addUser(User user) {
+        return writeLock.write(() -> {
 
-        User newUser = user.toBuilder().id(nextId).build();
-        nextId++;
+            User newUser = user.toBuilder().id(allocateId()).build();
 
-        if (isFieldEmpty(user.getName())) { // устанавливаем логин в качестве имени в случае незаполненного поля
-            newUser = newUser.toBuilder().name(user.getLogin()).build();
-        }
+            if (isFieldEmpty(user.getName())) { // устанавливаем логин в качестве имени в случае незаполненного поля
+                newUser = newUser.toBuilder().name(user.getLogin()).build();
+            }
 
-        updateUserProperties(newUser); // сохранение информации о пользователе
+            updateUserProperties(newUser); // сохранение информации о пользователе
 
-        log.info("Сохранен пользователь: {}", newUser);
+            log.info("Сохранен пользователь: {}", newUser);
 
-        return newUser;
+            return newUser;
+        });
     }
 
     @Override
     public void checkUserId(Long userId) {
-        if (!users.containsKey(userId)) {
+        if (findUser(userId) == null) {
             throw new ObjectNotFoundException(String.format("Пользователь с id: %d не найден", userId));
         }
     }
@@ -50,29 +77,31 @@ public class InMemoryUserStorage implements UserStorage {
     // обновление информации о пользователе
     @Override
     public User updateUser(User user) {
+        return writeLock.write(() -> {
 
-        checkUserId(user.getId());
-        User updatedUser;
-
-        if (isFieldEmpty(user.getName())) {
-            updatedUser = user.toBuilder().name(user.getLogin()).build();
-            // устанавливаем логин в качестве имени в случае незаполненного поля
-        } else {
-            updatedUser = user;
-        }
+            checkUserId(user.getId());
+            User updatedUser;
 
-        updateUserProperties(updatedUser); // обновление информации о пользователе
+            if (isFieldEmpty(user.getName())) {
+                updatedUser = user.toBuilder().name(user.getLogin()).build();
+                // устанавливаем логин в качестве имени в случае незаполненного поля
+            } else {
+                updatedUser = user;
+            }
 
-        log.info("Обновлены данные пользователя {}", updatedUser);
-        return updatedUser;
+            updateUserProperties(updatedUser); // обновление информации о пользователе
 
+            log.info("Обновлены данные пользователя {}", updatedUser);
+            return updatedUser;
+        });
     }
 
     // получение списка пользователей
     @Override
     public List<User> listUsers() {
 
-        List<User> listUsers = new ArrayList<>(users.values());
+        List<User> listUsers = new ArrayList<>();
+        processUsers(listUsers::add);
 
         log.info("Количество пользователей в списке: {}", listUsers.size());
 
@@ -80,18 +109,150 @@ public class InMemoryUserStorage implements UserStorage {
 
     }
 
+    // получение страницы пользователей с id больше afterId
+    @Override
+    public List<User> listUsersPage(Long afterId, int limit) {
+
+        List<User> page = new ArrayList<>(limit);
+
+        Lock lock = usersLock.readLock();
+        lock.lock();
+        try {
+            for (long id = Math.max(afterId, 0) + 1; id < nextId && page.size() < limit; id++) {
+                User user = users.get(id);
+                if (user != null) {
+                    page.add(user);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        return page;
+    }
+
+    // обработка всех пользователей в порядке возрастания id (пользователи берутся страницами под блокировкой,
+    // обработка - без блокировки, чтобы медленная выгрузка не задерживала изменения)
+    @Override
+    public void processUsers(Consumer<User> action) {
+
+        long afterId = 0;
+        List<User> page = listUsersPage(afterId, PROCESS_PAGE_SIZE);
+
+        while (!page.isEmpty()) {
+            page.forEach(action);
+            afterId = page.get(page.size() - 1).getId();
+            page = listUsersPage(afterId, PROCESS_PAGE_SIZE);
+        }
+    }
+
     @Override
     public User getUserById(Long userId) { // получение пользователя по идентификатору
 
-        return users.values().stream()
-                .filter(user -> user.getId().equals(userId))
-                .findFirst()
-                .orElseThrow(() ->
-                        new ObjectNotFoundException(String.format("Пользователь с id: %d не найден", userId)));
+        User user = findUser(userId);
+
+        if (user == null) {
+            throw new ObjectNotFoundException(String.format("Пользователь с id: %d не найден", userId));
+        }
+
+        return user;
+    }
+
+    // получение пользователей по списку id, отсортированных по id
+    @Override
+    public List<User> getUsersByIds(Collection<Long> userIds) {
+
+        return userIds.stream()
+                .distinct()
+                .map(this::findUser)
+                .filter(Objects::nonNull)
+                .sorted(Comparator.comparing(User::getId))
+                .collect(Collectors.toList());
     }
 
     public void updateUserProperties(User user) { // сохранение новой или обновленной информации о пользователе
-        users.put(user.getId(), user);
+        writeLock.write(() -> {
+
+            long[] friendIds = InMemoryBinaryFormat.toSortedArray(user.getFriends());
+
+            // запись журнала - до сохранения пользователя и под блокировкой таблицы: изменения пользователей
+            // попадают в журнал в том же порядке, в каком сохраняются
+            Lock lock = usersLock.writeLock();
+            lock.lock();
+            try {
+                writeAheadLog.append(InMemoryWriteAheadLog.USER_SAVED,
+                        out -> InMemoryBinaryFormat.writeUser(out, user, friendIds));
+                restoreUser(user);
+                friendGraph.putFriends(user.getId(), friendIds);
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    // восстановление пользователя из снимка или журнала изменений - граф дружбы строится после восстановления
+    // всех пользователей (loadFriendGraph), без поэлементных вставок
+    public void restoreUser(User user) {
+
+        Lock lock = usersLock.writeLock();
+        lock.lock();
+        try {
+            users.put(user.getId(), user);
+            nextId = Math.max(nextId, user.getId() + 1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // построение графа дружбы по спискам друзей всех пользователей
+    public void loadFriendGraph() {
+
+        Map<Long, long[]> friendsByUser = new HashMap<>();
+        processUsers(user -> friendsByUser.put(user.getId(), InMemoryBinaryFormat.toSortedArray(user.getFriends())));
+        friendGraph.load(friendsByUser);
+    }
+
+    public void clear() { // удаление всех пользователей
+
+        Lock lock = usersLock.writeLock();
+        lock.lock();
+        try {
+            users.clear();
+            nextId = 1L;
+        } finally {
+            lock.unlock();
+        }
+        friendGraph.clear();
+    }
+
+    FriendGraphIndex getFriendGraph() { // граф дружбы пользователей хранилища
+        return friendGraph;
+    }
+
+    User findUser(Long userId) { // поиск пользователя по id без исключения
+
+        if (userId == null) {
+            return null;
+        }
+
+        Lock lock = usersLock.readLock();
+        lock.lock();
+        try {
+            return users.get(userId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long allocateId() { // выдача следующего id пользователя
+
+        Lock lock = usersLock.writeLock();
+        lock.lock();
+        try {
+            return nextId++;
+        } finally {
+            lock.unlock();
+        }
     }
 
 
@@ -0,0 +1,549 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+@Slf4j
+@Component
+public class InMemoryWriteAheadLog {
+
+    // журнал изменений хранилищ в памяти между снимками: каждое изменение получает номер (LSN) и дописывается
+    // в конец файла журнала; записи копятся в памяти и сбрасываются на диск одним fsync раз в flush-interval-ms
+    // или при накоплении flush-records записей (групповая фиксация), изменение возвращает управление после
+    // сброса своей записи; журнал разбит на сегменты wal-<первый LSN>.log - при записи снимка начинается новый
+    // сегмент, а сегменты, полностью вошедшие в снимок, удаляются;
+    // включается параметром filmorate.memory.wal.path (каталог сегментов)
+    //
+    // после ошибки записи на диск журнал переходит в состояние ошибки: ожидающие сброса изменения получают
+    // ошибку, новые записи не принимаются до восстановления (recover) - иначе следующий удачный сброс
+    // отметил бы сброшенными и номера записей, потерянных при ошибке
+    //
+    // формат записи: длина данных (int), CRC32 данных (int), данные - LSN (long), вид записи (byte), содержимое
+
+    static final byte FILM_SAVED = 1;
+    static final byte USER_SAVED = 2;
+    static final byte LIKE_ADDED = 3;
+    static final byte LIKE_DELETED = 4;
+    static final byte FRIENDSHIP_CONFIRMED = 5;
+    static final byte FRIENDSHIP_UNCONFIRMED = 6;
+
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MIN_RECORD_SIZE = Long.BYTES + 1;
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory; // null - журнал выключен
+    private final long flushIntervalMs;
+    private final int flushRecords;
+    private final SegmentOpener segmentOpener;
+
+    // записи, ожидающие сброса на диск, и номер последней записи - под блокировкой this
+    private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(256);
+    private final DataOutputStream record = new DataOutputStream(recordBytes);
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream(1 << 16);
+    private int pendingRecords;
+    private boolean flushRequested;
+    private long lastLsn;
+
+    // текущий сегмент - под блокировкой flushLock
+    private final Object flushLock = new Object();
+    private FileChannel segment;
+    private long segmentFirstLsn;
+
+    // номер последней записи, сброшенной на диск, и ошибка записи (сохраняется до восстановления журнала) -
+    // ожидание под блокировкой durableMonitor
+    private final Object durableMonitor = new Object();
+    private volatile long durableLsn;
+    private volatile IOException failure;
+
+    private final AtomicLong syncCount = new AtomicLong();
+    private final ThreadLocal<long[]> threadLastLsn = ThreadLocal.withInitial(() -> new long[1]);
+    private ScheduledExecutorService flusher;
+
+    @Autowired
+    public InMemoryWriteAheadLog(@Value("${filmorate.memory.wal.path:}") String path,
+                                 @Value("${filmorate.memory.wal.flush-interval-ms:10}") long flushIntervalMs,
+                                 @Value("${filmorate.memory.wal.flush-records:1000}") int flushRecords) {
+
+        this(path, flushIntervalMs, flushRecords,
+                segmentPath -> FileChannel.open(segmentPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE));
+    }
+
+    InMemoryWriteAheadLog(String path, long flushIntervalMs, int flushRecords, SegmentOpener segmentOpener) {
+
+        this.directory = (path == null || path.isBlank()) ? null : Path.of(path);
+        this.flushIntervalMs = flushIntervalMs;
+        this.flushRecords = flushRecords;
+        this.segmentOpener = segmentOpener;
+    }
+
+    // открытие файла сегмента для записи
+    @FunctionalInterface
+    interface SegmentOpener {
+        FileChannel open(Path path) throws IOException;
+    }
+
+    // содержимое записи журнала
+    @FunctionalInterface
+    interface RecordBody {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    // применение записи журнала при восстановлении
+    @FunctionalInterface
+    interface RecordHandler {
+        void apply(byte type, ByteBuffer body);
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    // добавление записи - вызывается хранилищами под разделяемой блокировкой InMemoryWriteLock до изменения
+    // данных: запись, отклоненная журналом в состоянии ошибки, не меняет хранилище
+    void append(byte type, RecordBody body) {
+
+        if (!isEnabled()) {
+            return;
+        }
+
+        long lsn;
+        boolean flushNow;
+        ScheduledExecutorService executor;
+
+        synchronized (this) {
+
+            executor = flusher;
+            if (executor == null) {
+                throw new IllegalStateException("Журнал изменений не восстановлен");
+            }
+            if (failure != null) {
+                throw new UncheckedIOException("Журнал изменений не принимает записи после ошибки записи на диск",
+                        failure);
+            }
+
+            lsn = ++lastLsn;
+            recordBytes.reset();
+            try {
+                record.writeLong(lsn);
+                record.writeByte(type);
+                body.write(record);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            byte[] data = recordBytes.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            writeInt(pending, data.length);
+            writeInt(pending, (int) crc.getValue());
+            pending.writeBytes(data);
+
+            pendingRecords++;
+            flushNow = pendingRecords >= flushRecords && !flushRequested;
+            flushRequested |= flushNow;
+        }
+
+        threadLastLsn.get()[0] = lsn;
+        if (flushNow) {
+            executor.execute(this::flush);
+        }
+    }
+
+    // ожидание сброса на диск последней записи, добавленной текущим потоком
+    public void awaitDurable() {
+
+        if (!isEnabled()) {
+            return;
+        }
+
+        long lsn = threadLastLsn.get()[0];
+        if (lsn <= durableLsn) {
+            return;
+        }
+
+        synchronized (durableMonitor) {
+            while (durableLsn < lsn && failure == null) {
+                try {
+                    durableMonitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Ожидание записи журнала изменений прервано", e);
+                }
+            }
+        }
+
+        if (durableLsn < lsn) {
+            throw new UncheckedIOException("Не удалось записать журнал изменений", failure);
+        }
+    }
+
+    // сброс накопленных записей на диск одним fsync
+    public void flush() {
+
+        synchronized (flushLock) {
+
+            byte[] batch;
+            long batchLsn;
+
+            if (segment == null || failure != null) { // журнал закрыт или в состоянии ошибки
+                return;
+            }
+
+            synchronized (this) {
+                flushRequested = false;
+                if (pendingRecords == 0) {
+                    return;
+                }
+                batch = pending.toByteArray();
+                batchLsn = lastLsn;
+                pending.reset();
+                pendingRecords = 0;
+            }
+
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(batch);
+                while (buffer.hasRemaining()) {
+                    segment.write(buffer);
+                }
+                segment.force(false);
+                syncCount.incrementAndGet();
+                markDurable(batchLsn, null);
+            } catch (IOException e) {
+                // записи пакета не отмечаются сброшенными, журнал остается в состоянии ошибки до восстановления
+                log.error("Не удалось записать журнал изменений {}, записи с номерами до {} не сохранены",
+                        directory, batchLsn, e);
+                markDurable(durableLsn, e);
+            }
+        }
+    }
+
+    // номер последней записи - вызывается при остановленных изменениях хранилищ; накопленные записи
+    // сбрасываются на диск, и журнал продолжается в новом сегменте; прежний сегмент закрывается только после
+    // сброса на диск всех его записей, поэтому недописанная запись может быть только в конце последнего сегмента
+    long rotate() {
+
+        if (!isEnabled()) {
+            return 0;
+        }
+
+        synchronized (flushLock) {
+
+            flush();
+            if (failure != null) {
+                throw new UncheckedIOException("Журнал изменений в состоянии ошибки - новый сегмент не начат", failure);
+            }
+
+            long lsn;
+            synchronized (this) {
+                lsn = lastLsn;
+            }
+
+            if (lsn >= segmentFirstLsn) {
+                try {
+                    segment.force(true);
+                } catch (IOException e) {
+                    markDurable(durableLsn, e);
+                    throw new UncheckedIOException("Не удалось записать журнал изменений " + directory, e);
+                }
+                closeSegment();
+                openSegment(lsn + 1);
+            }
+            return lsn;
+        }
+    }
+
+    // удаление сегментов, все записи которых вошли в снимок с номером lsn
+    void deleteSegmentsUpTo(long lsn) {
+
+        if (!isEnabled()) {
+            return;
+        }
+
+        synchronized (flushLock) {
+            for (Path path : listSegments()) {
+                long firstLsn = firstLsn(path);
+                if (firstLsn <= lsn && firstLsn != segmentFirstLsn) {
+                    try {
+                        Files.delete(path);
+                    } catch (IOException e) {
+                        log.warn("Не удалось удалить сегмент журнала изменений {}", path, e);
+                    }
+                }
+            }
+        }
+    }
+
+    // восстановление: применение записей с номером больше afterLsn из всех сегментов по порядку,
+    // недописанная запись в конце последнего сегмента отбрасывается, поврежденная запись в другом месте
+    // останавливает восстановление - записи после нее не отбрасываются молча; журнал продолжается
+    // в последнем сегменте
+    long recover(long afterLsn, RecordHandler handler) {
+
+        if (!isEnabled()) {
+            return afterLsn;
+        }
+
+        synchronized (flushLock) {
+
+            flush();
+            closeSegment();
+
+            try {
+                Files.createDirectories(directory);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось создать каталог журнала изменений " + directory, e);
+            }
+
+            List<Path> segments = listSegments();
+            long lsn = afterLsn;
+            for (int i = 0; i < segments.size(); i++) {
+                lsn = Math.max(lsn, replaySegment(segments.get(i), i == segments.size() - 1, afterLsn, handler));
+            }
+
+            synchronized (this) {
+                lastLsn = lsn;
+                pending.reset();
+                pendingRecords = 0;
+            }
+            markDurable(lsn, null);
+
+            if (segments.isEmpty()) {
+                openSegment(lsn + 1);
+            } else {
+                Path last = segments.get(segments.size() - 1);
+                openSegment(firstLsn(last));
+            }
+
+            synchronized (this) {
+                if (flusher == null) {
+                    flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "wal-flusher");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    flusher.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs,
+                            TimeUnit.MILLISECONDS);
+                }
+            }
+
+            log.info("Журнал изменений {} восстановлен: последний номер записи {}", directory, lsn);
+            return lsn;
+        }
+    }
+
+    // количество выполненных fsync
+    public long getSyncCount() {
+        return syncCount.get();
+    }
+
+    // сброс записей и закрытие журнала при остановке приложения
+    @PreDestroy
+    public void close() {
+
+        if (!isEnabled()) {
+            return;
+        }
+
+        synchronized (this) {
+            if (flusher != null) {
+                flusher.shutdown();
+            }
+        }
+        synchronized (flushLock) {
+            if (segment != null) {
+                flush();
+                closeSegment();
+            }
+        }
+    }
+
+    // чтение записей сегмента, возвращается номер последней записи
+    private long replaySegment(Path path, boolean last, long afterLsn, RecordHandler handler) {
+
+        long lsn = 0;
+        int validEnd = 0;
+        long size;
+        int records = 0;
+        int lastBadLength = -1; // длина записи с неверной контрольной суммой
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+            size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Сегмент журнала изменений больше 2 ГБ: " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length < MIN_RECORD_SIZE || length > buffer.remaining()) {
+                    break;
+                }
+
+                ByteBuffer data = buffer.slice().limit(length);
+                CRC32 crc = new CRC32();
+                crc.update(data.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    lastBadLength = length;
+                    break;
+                }
+
+                lsn = data.getLong();
+                byte type = data.get();
+                if (lsn > afterLsn) {
+                    handler.apply(type, data);
+                    records++;
+                }
+
+                buffer.position(buffer.position() + length);
+                validEnd = buffer.position();
+            }
+
+            if (validEnd < size) {
+                if (!last || !isTornTail(buffer, validEnd, lastBadLength)) {
+                    log.error("Журнал изменений поврежден: неверная запись в позиции {} сегмента {} размером {} байт "
+                            + "не является недописанным концом журнала", validEnd, path, size);
+                    throw new IllegalStateException(String.format(
+                            "Журнал изменений поврежден: неверная запись в позиции %d сегмента %s", validEnd, path));
+                }
+                log.warn("Отброшена недописанная запись в конце журнала изменений {}: {} байт", path,
+                        size - validEnd);
+                channel.truncate(validEnd);
+            }
+
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось прочитать журнал изменений " + path, e);
+        }
+
+        log.info("Из сегмента {} применено записей: {}", path, records);
+        return lsn;
+    }
+
+    // недописанный конец журнала: неполный заголовок, запись, выходящая за конец файла или последняя в файле,
+    // либо нули до конца файла; запись с неверной контрольной суммой, за которой есть другие данные, -
+    // повреждение журнала, а не недописанный конец
+    private static boolean isTornTail(ByteBuffer buffer, int position, int badLength) {
+
+        int remaining = buffer.limit() - position;
+        if (remaining < RECORD_HEADER_SIZE) {
+            return true;
+        }
+        if (badLength >= 0) {
+            return RECORD_HEADER_SIZE + badLength == remaining;
+        }
+
+        int length = buffer.getInt(position);
+        if (length >= MIN_RECORD_SIZE) {
+            return length > remaining - RECORD_HEADER_SIZE;
+        }
+        for (int i = position; i < buffer.limit(); i++) {
+            if (buffer.get(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void openSegment(long firstLsn) {
+
+        Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstLsn, SEGMENT_SUFFIX));
+        try {
+            boolean created = !Files.exists(path);
+            segment = segmentOpener.open(path);
+            segment.position(segment.size());
+            segmentFirstLsn = firstLsn;
+            if (created) {
+                syncDirectory();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть журнал изменений " + path, e);
+        }
+    }
+
+    // сброс на диск каталога журнала - без него новый сегмент со сброшенными записями может пропасть
+    // после сбоя (на системах, где каталог нельзя открыть для сброса, пропускается)
+    private void syncDirectory() {
+
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.debug("Каталог журнала изменений {} не сброшен на диск", directory, e);
+        }
+    }
+
+    private void closeSegment() {
+
+        if (segment == null) {
+            return;
+        }
+        try {
+            segment.close();
+        } catch (IOException e) {
+            log.warn("Не удалось закрыть журнал изменений {}", directory, e);
+        }
+        segment = null;
+    }
+
+    // сегменты журнала по возрастанию первого номера записи
+    private List<Path> listSegments() {
+
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                            && path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось прочитать каталог журнала изменений " + directory, e);
+        }
+    }
+
+    private static long firstLsn(Path segmentPath) {
+
+        String name = segmentPath.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private void markDurable(long lsn, IOException error) {
+
+        synchronized (durableMonitor) {
+            durableLsn = lsn;
+            failure = error;
+            durableMonitor.notifyAll();
+        }
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+}
@@ -0,0 +1,92 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+@Component
+@RequiredArgsConstructor
+public class InMemoryWriteLock {
+
+    // согласование изменений хранилищ в памяти со снимком: изменение берет разделяемую блокировку одной
+    // из STRIPES частей (часть выбирается по потоку), поэтому изменения из разных потоков не меняют общего
+    // состояния блокировки и не ждут друг друга; снимок копирует данные всех хранилищ, взяв исключительные
+    // блокировки всех частей - в снимок не попадает половина изменения (например, лайк без записи журнала);
+    // внешнее изменение до снятия блокировки ждет сброса своих записей журнала на диск - снимок
+    // не начинается, пока изменение не стало устойчивым
+
+    // количество частей блокировки (степень двойки)
+    private static final int STRIPES = 64;
+
+    private final ReentrantReadWriteLock[] locks = newLocks();
+    private final InMemoryWriteAheadLog writeAheadLog;
+
+    // выполнение изменения хранилища
+    public void write(Runnable change) {
+
+        ReentrantReadWriteLock lock = threadLock();
+        lock.readLock().lock();
+        try {
+            change.run();
+            awaitDurable(lock);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // выполнение изменения хранилища с результатом
+    public <T> T write(Supplier<T> change) {
+
+        ReentrantReadWriteLock lock = threadLock();
+        lock.readLock().lock();
+        try {
+            T result = change.get();
+            awaitDurable(lock);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ожидание записи журнала - только во внешнем изменении, вложенные изменения того же потока
+    // берут ту же часть блокировки и не ждут
+    private void awaitDurable(ReentrantReadWriteLock lock) {
+
+        if (lock.getReadHoldCount() == 1) {
+            writeAheadLog.awaitDurable();
+        }
+    }
+
+    // выполнение действия при остановленных изменениях всех хранилищ - части блокируются всегда в одном порядке
+    public <T> T exclusive(Supplier<T> action) {
+
+        int locked = 0;
+        try {
+            for (; locked < STRIPES; locked++) {
+                locks[locked].writeLock().lock();
+            }
+            return action.get();
+        } finally {
+            while (locked > 0) {
+                locks[--locked].writeLock().unlock();
+            }
+        }
+    }
+
+    // часть блокировки текущего потока
+    private ReentrantReadWriteLock threadLock() {
+        return locks[(int) Thread.currentThread().getId() & (STRIPES - 1)];
+    }
+
+    private static ReentrantReadWriteLock[] newLocks() {
+
+        ReentrantReadWriteLock[] locks = new ReentrantReadWriteLock[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+        return locks;
+    }
+
+}
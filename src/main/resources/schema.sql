@@ -1,5 +1,3 @@
-
-
 --создание таблицы users
 
 CREATE TABLE IF NOT EXISTS users (
@@ -34,7 +32,8 @@ film_name varchar(100) NOT NULL,
 description varchar(200) NOT NULL,
 release_date date NOT NULL,
 duration int NOT NULL,
-rating_mpa_id int REFERENCES rating_mpa (rating_mpa_id) ON DELETE RESTRICT
+rating_mpa_id int REFERENCES rating_mpa (rating_mpa_id) ON DELETE RESTRICT,
+likes_count bigint DEFAULT 0 NOT NULL
 );
 
 -- создание таблицы genres
@@ -58,9 +57,47 @@ PRIMARY KEY(film_id, genre_id)
 CREATE TABLE IF NOT EXISTS likes (
 film_id int REFERENCES films (film_id) ON DELETE CASCADE,
 user_id bigint REFERENCES users (user_id) ON DELETE CASCADE,
+liked_at timestamp DEFAULT CURRENT_TIMESTAMP,
 PRIMARY KEY(film_id, user_id)
 );
 
+-- добавление счетчика лайков в таблицу films, созданную до его появления, и однократное заполнение счетчика
+
+ALTER TABLE films ADD COLUMN IF NOT EXISTS likes_count bigint;
+
+UPDATE films SET likes_count = (SELECT COUNT(l.user_id) FROM likes AS l WHERE l.film_id = films.film_id)
+WHERE likes_count IS NULL;
+
+ALTER TABLE films ALTER COLUMN likes_count SET DEFAULT 0;
+
+ALTER TABLE films ALTER COLUMN likes_count SET NOT NULL;
+
+-- индекс для получения списка наиболее популярных фильмов
+
+CREATE INDEX IF NOT EXISTS films_likes_count_idx ON films (likes_count DESC, film_id);
+
+-- добавление времени лайка в таблицу likes, созданную до его появления (время старых лайков неизвестно)
+
+ALTER TABLE likes ADD COLUMN IF NOT EXISTS liked_at timestamp;
+
+ALTER TABLE likes ALTER COLUMN liked_at SET DEFAULT CURRENT_TIMESTAMP;
+
+-- индекс для получения лайков за последний период
+
+CREATE INDEX IF NOT EXISTS likes_liked_at_idx ON likes (liked_at);
+
+-- индекс для получения входящих заявок в друзья и удаления дружбы вместе с пользователем
+
+CREATE INDEX IF NOT EXISTS friendship_recipient_idx ON friendship (recipient_id, initiator_id);
+
+-- индекс для получения лайков пользователя по времени и удаления лайков вместе с пользователем
+
+CREATE INDEX IF NOT EXISTS likes_user_liked_at_idx ON likes (user_id, liked_at DESC);
+
+-- индекс для получения фильмов жанра и проверки ссылок на жанр при его удалении
+
+CREATE INDEX IF NOT EXISTS film_genres_genre_idx ON film_genres (genre_id, film_id);
+
 
 
 
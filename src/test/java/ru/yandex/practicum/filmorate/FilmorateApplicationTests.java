@@ -15,9 +15,13 @@ import static org.junit.jupiter.api.Assertions.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.ResponseEntity;
 import org.springframework.test.annotation.DirtiesContext;
 
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.controllers.FilmController;
+import ru.yandex.practicum.filmorate.controllers.NdjsonExport;
+import ru.yandex.practicum.filmorate.controllers.Pagination;
 import ru.yandex.practicum.filmorate.controllers.UserController;
 import ru.yandex.practicum.filmorate.exceptions.ObjectNotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
@@ -28,6 +32,9 @@ import ru.yandex.practicum.filmorate.storage.UserStorage;
 
 import javax.validation.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -621,6 +628,15 @@ public class FilmorateApplicationTests {
         assertEquals(mutualFriends3.size(), 0,
                 "Неверный размер списка общих друзей у друзей пользователя");
 
+        // количество общих друзей совпадает с размером списков
+
+        assertEquals(2, userController.countCommonFriends(userId, friend1Id),
+                "Неверное количество общих друзей у пользователя");
+        assertEquals(0, userController.countCommonFriends(friend3Id, friend1Id),
+                "Неверное количество общих друзей у друзей пользователя");
+        assertEquals(userController.listUserFriends(userId).size(), userController.countUserFriends(userId),
+                "Неверное количество друзей у пользователя");
+
     }
 
     @Test
@@ -1463,7 +1479,7 @@ public class FilmorateApplicationTests {
 
         //получаем пользователей из списка
 
-        List<User> usersList = userController.listUsers();
+        List<User> usersList = userController.listUsers(null, null).getBody();
         assertEquals(usersList.size(), 2, "Список пользователей неверного размера");
 
     }
@@ -1564,11 +1580,72 @@ public class FilmorateApplicationTests {
 
         //получаем фильмы из списка
 
-        List<Film> filmsList = filmController.listFilms();
+        List<Film> filmsList = filmController.listFilms(null, null).getBody();
         assertEquals(filmsList.size(), 2, "Список фильмов неверного размера");
 
     }
 
+    @Test
+    public void shouldExportFilmsAsNdjson() throws IOException { // выгрузка всех фильмов по одному на строку
+
+        Mpa mpa = new Mpa(1, "G");
+
+        for (int i = 1; i <= 3; i++) {
+            filmController.addFilm(new Film(1, "Film " + i, "Description " + i,
+                    LocalDate.of(2000 + i, 1, 1), 90, 0L, mpa, new HashSet<>()));
+        }
+
+        ResponseEntity<StreamingResponseBody> response = filmController.exportFilms();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Objects.requireNonNull(response.getBody()).writeTo(out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+
+        assertEquals(NdjsonExport.APPLICATION_NDJSON, response.getHeaders().getContentType());
+        assertEquals(3, lines.length, "Неверное количество строк выгрузки");
+        assertTrue(lines[0].startsWith("{\"id\":1,\"name\":\"Film 1\""), "Неверная первая строка выгрузки");
+        assertTrue(lines[2].startsWith("{\"id\":3,"), "Неверная последняя строка выгрузки");
+
+    }
+
+    @Test
+    public void shouldListFilmsByPages() { // постраничное получение списка фильмов по id последнего фильма
+
+        Mpa mpa = new Mpa(1, "G");
+
+        for (int i = 1; i <= 5; i++) {
+            filmController.addFilm(new Film(1, "Film " + i, "Description " + i,
+                    LocalDate.of(2000 + i, 1, 1), 90, 0L, mpa, new HashSet<>()));
+        }
+
+        // первая страница заполнена - в ответе есть ссылка на следующую
+        ResponseEntity<List<Film>> firstPage = filmController.listFilms(null, 2);
+        assertEquals(List.of(1, 2), Objects.requireNonNull(firstPage.getBody()).stream()
+                .map(Film::getId).collect(Collectors.toList()), "Неверная первая страница");
+        assertEquals("2", firstPage.getHeaders().getFirst(Pagination.NEXT_CURSOR_HEADER));
+
+        ResponseEntity<List<Film>> secondPage = filmController.listFilms(2, 2);
+        assertEquals(List.of(3, 4), Objects.requireNonNull(secondPage.getBody()).stream()
+                .map(Film::getId).collect(Collectors.toList()), "Неверная вторая страница");
+
+        // последняя страница неполная - ссылки на следующую нет
+        ResponseEntity<List<Film>> lastPage = filmController.listFilms(4, 2);
+        assertEquals(List.of(5), Objects.requireNonNull(lastPage.getBody()).stream()
+                .map(Film::getId).collect(Collectors.toList()), "Неверная последняя страница");
+        assertNull(lastPage.getHeaders().getFirst(Pagination.NEXT_CURSOR_HEADER));
+
+        // без параметров страницы возвращается весь список без ссылки на следующую страницу
+        ResponseEntity<List<Film>> allFilms = filmController.listFilms(null, null);
+        assertEquals(5, Objects.requireNonNull(allFilms.getBody()).size(), "Неверный размер полного списка");
+        assertNull(allFilms.getHeaders().getFirst(Pagination.NEXT_CURSOR_HEADER));
+
+        // при указании только id последнего фильма размер страницы - по умолчанию
+        ResponseEntity<List<Film>> tailPage = filmController.listFilms(3, null);
+        assertEquals(List.of(4, 5), Objects.requireNonNull(tailPage.getBody()).stream()
+                .map(Film::getId).collect(Collectors.toList()), "Неверная страница после id 3");
+
+    }
+
     //************************* Тесты на валидацию данных для фильмов *************************
     @Test
     public void shouldPassValidationFilmWithValidData() { //filmData is valid = should pass
@@ -7,22 +7,55 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.yandex.practicum.filmorate.model.*;
+import ru.yandex.practicum.filmorate.exceptions.ObjectNotFoundException;
+import ru.yandex.practicum.filmorate.exceptions.SearchLimitExceededException;
+import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.service.UserService;
 import ru.yandex.practicum.filmorate.storage.*;
-
+import ru.yandex.practicum.filmorate.storage.db.FriendshipDbStorage;
+import ru.yandex.practicum.filmorate.storage.db.LikeDbStorage;
+import ru.yandex.practicum.filmorate.storage.index.FilmLeaderboard;
+import ru.yandex.practicum.filmorate.storage.memory.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.memory.InMemoryLikeStorage;
+import ru.yandex.practicum.filmorate.storage.index.FriendFeedTimelines;
+import ru.yandex.practicum.filmorate.storage.index.FriendGraphIndex;
+import ru.yandex.practicum.filmorate.storage.index.ReferenceDataRegistry;
+import ru.yandex.practicum.filmorate.storage.index.TrendingFilmsCounter;
+
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
 
 @SpringBootTest
 @AutoConfigureTestDatabase
+@Import(StatementCounter.class)
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
-@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
 public class FilmorateDbApplicationTest {
 
     private final UserStorage userStorage;
@@ -31,6 +64,17 @@ public class FilmorateDbApplicationTest {
     private final LikeStorage likeStorage;
     private final RatingMpaStorage mpaStorage;
     private final FilmGenreStorage genreStorage;
+    private final FilmLeaderboard leaderboard;
+    private final TrendingFilmsCounter trendingCounter;
+    private final ReferenceDataRegistry referenceData;
+    private final JdbcTemplate jdbcTemplate;
+    private final FriendshipStorage friendshipStorage;
+    private final FriendGraphIndex friendGraph;
+    private final FilmService filmService;
+    private final FriendFeedTimelines feedTimelines;
+    private final InMemoryFilmStorage inMemoryFilmStorage;
+    private final InMemoryLikeStorage inMemoryLikeStorage;
+    private final PlatformTransactionManager transactionManager;
     User userAlex1;
     User userEgor2;
     User userAnna3;
@@ -210,6 +254,79 @@ public class FilmorateDbApplicationTest {
                                 .hasFieldOrPropertyWithValue("login", "anna"));
     }
 
+    @Test
+    public void shouldListUsersByPages() { // постраничное получение списка пользователей
+
+        User user1 = userStorage.addUser(userAlex1);
+        User user2 = userStorage.addUser(userEgor2);
+        User user3 = userStorage.addUser(userAnna3);
+
+        assertThat(userStorage.listUsersPage(0L, 2)).asList()
+                .containsExactly(userStorage.getUserById(user1.getId()), userStorage.getUserById(user2.getId()));
+        assertThat(userStorage.listUsersPage(user2.getId(), 2)).asList()
+                .containsExactly(userStorage.getUserById(user3.getId()));
+        assertThat(userStorage.listUsersPage(user3.getId(), 2)).asList().isEmpty();
+
+    }
+
+    @Test
+    public void shouldListUsersWithSingleQuery() { // получение списка пользователей с друзьями одним запросом
+
+        User user1 = userStorage.addUser(userAlex1);
+        User user2 = userStorage.addUser(userEgor2);
+        User user3 = userStorage.addUser(userAnna3);
+
+        userService.addFriend(user1.getId(), user2.getId());
+        userService.addFriend(user2.getId(), user3.getId());
+        userService.addFriend(user2.getId(), user1.getId());
+
+        StatementCounter.reset();
+        List<User> users = userStorage.listUsers();
+
+        assertThat(StatementCounter.count()).isEqualTo(1);
+        assertThat(users).asList().containsExactly(userStorage.getUserById(user1.getId()),
+                userStorage.getUserById(user2.getId()), userStorage.getUserById(user3.getId()));
+        assertThat(users.get(1)).hasFieldOrPropertyWithValue("friends", Set.of(user1.getId(), user3.getId()));
+        assertThat(users.get(2)).hasFieldOrPropertyWithValue("friends", Set.of());
+
+        // страница пользователей с друзьями - тоже одним запросом
+        StatementCounter.reset();
+        List<User> page = userStorage.listUsersPage(user1.getId(), 10);
+
+        assertThat(StatementCounter.count()).isEqualTo(1);
+        assertThat(page).asList().hasSize(2);
+        assertThat(page.get(0)).hasFieldOrPropertyWithValue("friends", Set.of(user1.getId(), user3.getId()));
+        assertThat(page.get(1)).hasFieldOrPropertyWithValue("friends", Set.of());
+
+        // страница ограничивается пользователями, а не строками с друзьями
+        assertThat(userStorage.listUsersPage(0L, 2)).asList().extracting("id")
+                .containsExactly(user1.getId(), user2.getId());
+
+    }
+
+    @Test
+    public void shouldProcessAllUsersWithSingleQuery() { // выгрузка всех пользователей с друзьями одним запросом
+
+        User user1 = userStorage.addUser(userAlex1);
+        User user2 = userStorage.addUser(userEgor2);
+        User user3 = userStorage.addUser(userAnna3);
+
+        userService.addFriend(user1.getId(), user2.getId());
+        userService.addFriend(user1.getId(), user3.getId());
+        userService.addFriend(user3.getId(), user1.getId());
+
+        List<User> users = new ArrayList<>();
+
+        StatementCounter.reset();
+        userStorage.processUsers(users::add);
+
+        assertThat(StatementCounter.count()).isEqualTo(1);
+        assertThat(users).asList().containsExactly(userStorage.getUserById(user1.getId()),
+                userStorage.getUserById(user2.getId()), userStorage.getUserById(user3.getId()));
+        assertThat(users.get(0)).hasFieldOrPropertyWithValue("friends", Set.of(user2.getId(), user3.getId()));
+
+    }
+
     @Test
     public void shouldGetEmptyListUsers() { // получение пустого списка пользователей
 
@@ -314,6 +431,368 @@ public class FilmorateDbApplicationTest {
 
     }
 
+    @Test
+    public void shouldListFriendsWithBulkQueries() { // друзья загружаются двумя запросами независимо от их количества
+
+        User user1 = userStorage.addUser(userAlex1);
+        User user2 = userStorage.addUser(userEgor2);
+        User user3 = userStorage.addUser(userAnna3);
+        User user4 = userStorage.addUser(userOlga4);
+
+        userService.addFriend(user1.getId(), user2.getId());
+        userService.addFriend(user1.getId(), user3.getId());
+        userService.addFriend(user1.getId(), user4.getId());
+        userService.addFriend(user3.getId(), user1.getId());
+
+        StatementCounter.reset();
+        List<User> friends = userService.listUserFriends(user1.getId());
+
+        // проверка id пользователя, запрос id друзей, запрос пользователей и запрос их друзей
+        assertThat(StatementCounter.count()).isEqualTo(4);
+        assertThat(friends).asList().containsExactly(userStorage.getUserById(user2.getId()),
+                userStorage.getUserById(user3.getId()), userStorage.getUserById(user4.getId()));
+        assertThat(friends.get(1)).hasFieldOrPropertyWithValue("friends", Set.of(user1.getId()));
+
+    }
+
+    @Test
+    public void shouldFindCommonFriendsInFriendGraph() { // общие друзья вычисляются по графу дружбы в памяти
+
+        User user1 = userStorage.addUser(userAlex1);
+        User user2 = userStorage.addUser(userEgor2);
+        User user3 = userStorage.addUser(userAnna3);
+        User user4 = userStorage.addUser(userOlga4);
+
+        userService.addFriend(user1.getId(), user3.getId());
+        userService.addFriend(user1.getId(), user4.getId());
+        userService.addFriend(user2.getId(), user3.getId());
+        userService.addFriend(user2.getId(), user4.getId());
+        userService.deleteFriend(user2.getId(), user4.getId());
+
+        StatementCounter.reset();
+
+        assertThat(List.copyOf(friendshipStorage.listCommonFriends(user1.getId(), user2.getId()))).asList()
+                .containsExactly(user3.getId());
+        assertThat(StatementCounter.count()).isEqualTo(0);
+
+        // граф, построенный заново по таблице friendship, совпадает с графом, измененным по ходу работы
+        ((FriendshipDbStorage) friendshipStorage).loadFriendGraph();
+
+        assertThat(friendGraph.getFriends(user1.getId())).containsExactly(user3.getId(), user4.getId());
+        assertThat(friendGraph.getFriends(user2.getId())).containsExactly(user3.getId());
+        assertThat(friendGraph.getFriends(user3.getId())).isEmpty();
+        assertThat(friendGraph.getIncomingFriends(user3.getId())).containsExactly(user1.getId(), user2.getId());
+        assertThat(friendGraph.getIncomingFriends(user1.getId())).isEmpty();
+
+    }
+
+    @Test
+    public void shouldSuggestFriendsOfFriends() { // рекомендации друзей по количеству общих друзей
+
+        User user1 = userStorage.addUser(userAlex1);
+        User user2 = userStorage.addUser(userEgor2);
+        User user3 = userStorage.addUser(userAnna3);
+        User user4 = userStorage.addUser(userOlga4);
+        User user5 = userStorage.addUser(userOlga4.toBuilder().email("Olga5@yandex.ru").login("olga5").build());
+
+        // у пользователя 1 друзья 2 и 3; у пользователя 4 с ним двое общих друзей, у пользователя 5 - один
+        userService.addFriend(user1.getId(), user2.getId());
+        userService.addFriend(user1.getId(), user3.getId());
+        userService.addFriend(user2.getId(), user5.getId());
+        userService.addFriend(user2.getId(), user4.getId());
+        userService.addFriend(user3.getId(), user4.getId());
+        userService.addFriend(user3.getId(), user1.getId());
+        userService.addFriend(user2.getId(), user3.getId());
+
+        List<User> suggestions = userService.listFriendSuggestions(user1.getId(), 10);
+
+        // сам пользователь и его друзья не рекомендуются
+        assertThat(suggestions).asList().containsExactly(userStorage.getUserById(user4.getId()),
+                userStorage.getUserById(user5.getId()));
+        assertThat(userService.listFriendSuggestions(user1.getId(), 1)).asList()
+                .containsExactly(userStorage.getUserById(user4.getId()));
+        assertThat(userService.listFriendSuggestions(user4.getId(), 10)).asList().isEmpty();
+
+    }
+
+    @Test
+    public void shouldSkipOversizedFriendListInSuggestions() {
+        // друг со списком больше предела связей пропускается, друзья остальных друзей рекомендуются
+
+        long[] crowd = new long[FriendGraphIndex.MAX_SUGGESTION_EDGES + 1];
+        Arrays.setAll(crowd, i -> 1_000L + i);
+
+        FriendGraphIndex graph = new FriendGraphIndex();
+        graph.load(Map.of(1L, new long[]{2L, 3L}, 2L, crowd, 3L, new long[]{4L}));
+
+        assertThat(graph.listFriendSuggestions(1L, 10)).asList().containsExactly(4L);
+    }
+
+    @Test
+    public void shouldFindShortestFriendshipPath() { // кратчайшая цепочка друзей между пользователями
+
+        User user1 = userStorage.addUser(userAlex1);
+        User user2 = userStorage.addUser(userEgor2);
+        User user3 = userStorage.addUser(userAnna3);
+        User user4 = userStorage.addUser(userOlga4);
+
+        // цепочка 1 -> 2 -> 3 -> 4 и более короткий путь 1 -> 3 -> 4
+        userService.addFriend(user1.getId(), user2.getId());
+        userService.addFriend(user2.getId(), user3.getId());
+        userService.addFriend(user3.getId(), user4.getId());
+
+        assertThat(userService.findFriendshipPath(user1.getId(), user4.getId())).asList().extracting("id")
+                .containsExactly(user1.getId(), user2.getId(), user3.getId(), user4.getId());
+
+        userService.addFriend(user1.getId(), user3.getId());
+
+        assertThat(userService.findFriendshipPath(user1.getId(), user4.getId())).asList().extracting("id")
+                .containsExactly(user1.getId(), user3.getId(), user4.getId());
+        assertThat(userService.findFriendshipPath(user2.getId(), user2.getId())).asList().extracting("id")
+                .containsExactly(user2.getId());
+
+        // заявки на дружбу направлены - обратной цепочки нет
+        assertThatThrownBy(() -> userService.findFriendshipPath(user4.getId(), user1.getId()))
+                .isInstanceOf(ObjectNotFoundException.class);
+
+    }
+
+    @Test
+    public void shouldLimitFriendshipPathLengthAndWork() { // ограничение длины цепочки и объема обхода
+
+        // цепочка 1 -> 2 -> ... -> 10 и пользователь 100, добавивший в друзья всех пользователей 1000..300999
+        for (long id = 1; id < 10; id++) {
+            friendGraph.addFriend(id, id + 1);
+        }
+        friendGraph.putFriends(100L, LongStream.range(1_000, 301_000).toArray());
+
+        assertThat(friendGraph.getIncomingFriends(5L)).containsExactly(4L);
+        assertThat(friendGraph.getIncomingFriends(5_000L)).containsExactly(100L);
+
+        assertThat(friendGraph.findPath(1L, 7L, 6)).containsExactly(1, 2, 3, 4, 5, 6, 7);
+        assertThat(friendGraph.findPath(1L, 8L, 6)).isEmpty();
+        assertThat(friendGraph.findPath(3L, 1L, 6)).isEmpty();
+
+        // обход прекращается на пользователе с числом друзей больше ограничения - это не отсутствие цепочки
+        assertThatThrownBy(() -> friendGraph.findPath(100L, 1L, 6)).isInstanceOf(SearchLimitExceededException.class);
+
+        friendGraph.removeFriend(100L, 5_000L);
+        assertThat(friendGraph.getIncomingFriends(5_000L)).isEmpty();
+
+        friendGraph.putFriends(100L, new long[]{2L});
+        assertThat(friendGraph.getIncomingFriends(1_000L)).isEmpty();
+        assertThat(friendGraph.getIncomingFriends(2L)).containsExactly(1L, 100L);
+        assertThat(friendGraph.findPath(100L, 4L, 6)).containsExactly(100, 2, 3, 4);
+
+    }
+
+    @Test
+    public void shouldFanOutLikesToFriendFeeds() { // лайки друзей раскладываются по лентам пользователей
+
+        User user1 = userStorage.addUser(userAlex1);
+        User user2 = userStorage.addUser(userEgor2);
+        User user3 = userStorage.addUser(userAnna3);
+        User user4 = userStorage.addUser(userOlga4);
+        Film film1 = filmStorage.addFilm(filmAllHatesCris);
+        Film film2 = filmStorage.addFilm(filmDiamondHand);
+        Film film3 = filmStorage.addFilm(filmTomAndJerry);
+
+        // у пользователя 1 друзья 2 и 3, у пользователя 4 - друг 2
+        userService.addFriend(user1.getId(), user2.getId());
+        userService.addFriend(user1.getId(), user3.getId());
+        userService.addFriend(user4.getId(), user2.getId());
+
+        filmService.addLike(film1.getId(), user2.getId());
+        filmService.addLike(film2.getId(), user3.getId());
+        filmService.addLike(film3.getId(), user2.getId());
+        feedTimelines.awaitPendingEvents();
+
+        assertThat(userService.listFeed(user1.getId(), 10)).asList().extracting("filmId")
+                .containsExactly(film3.getId(), film2.getId(), film1.getId());
+        assertThat(userService.listFeed(user1.getId(), 2)).asList().extracting("userId")
+                .containsExactly(user2.getId(), user3.getId());
+        assertThat(userService.listFeed(user4.getId(), 10)).asList().extracting("filmId")
+                .containsExactly(film3.getId(), film1.getId());
+        assertThat(userService.listFeed(user2.getId(), 10)).asList().isEmpty();
+
+        // удаленный лайк исчезает из лент, лайки удаленного из друзей пользователя не показываются
+        filmService.deleteLike(film1.getId(), user2.getId());
+        userService.deleteFriend(user1.getId(), user3.getId());
+        feedTimelines.awaitPendingEvents();
+
+        assertThat(userService.listFeed(user1.getId(), 10)).asList().extracting("filmId")
+                .containsExactly(film3.getId());
+        assertThat(userService.listFeed(user4.getId(), 10)).asList().extracting("filmId")
+                .containsExactly(film3.getId());
+
+        // ленты, восстановленные по таблицам likes и friendship, совпадают с лентами, разложенными по ходу работы
+        ((LikeDbStorage) likeStorage).loadFriendFeeds();
+
+        assertThat(userService.listFeed(user1.getId(), 10)).asList().extracting("filmId")
+                .containsExactly(film3.getId());
+        assertThat(userService.listFeed(user4.getId(), 10)).asList().extracting("filmId")
+                .containsExactly(film3.getId());
+
+    }
+
+    @Test
+    public void shouldNotPublishRolledBackLikes() { // откаченные лайк и удаление лайка не меняют ленты друзей
+
+        User user1 = userStorage.addUser(userAlex1);
+        User user2 = userStorage.addUser(userEgor2);
+        Film film1 = filmStorage.addFilm(filmAllHatesCris);
+        Film film2 = filmStorage.addFilm(filmDiamondHand);
+
+        userService.addFriend(user1.getId(), user2.getId());
+        filmService.addLike(film2.getId(), user2.getId());
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.executeWithoutResult(status -> {
+            likeStorage.addLike(film1.getId(), user2.getId());
+            likeStorage.deleteLike(film2.getId(), user2.getId());
+            status.setRollbackOnly();
+        });
+        feedTimelines.awaitPendingEvents();
+
+        assertThat(userService.listFeed(user1.getId(), 10)).asList().extracting("filmId")
+                .containsExactly(film2.getId());
+
+    }
+
+    @Test
+    public void shouldNotChangeFriendGraphOnRollback() { // откаченные изменения дружбы не попадают в граф дружбы
+
+        User user1 = userStorage.addUser(userAlex1);
+        User user2 = userStorage.addUser(userEgor2);
+        User user3 = userStorage.addUser(userAnna3);
+
+        userService.addFriend(user1.getId(), user2.getId());
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.executeWithoutResult(status -> {
+            friendshipStorage.addFriend(user1.getId(), user3.getId());
+            friendshipStorage.deleteFriend(user1.getId(), user2.getId());
+
+            // до фиксации граф не меняется
+            assertThat(friendGraph.getFriends(user1.getId())).containsExactly(user2.getId());
+            status.setRollbackOnly();
+        });
+
+        assertThat(friendGraph.getFriends(user1.getId())).containsExactly(user2.getId());
+        assertThat(friendGraph.getIncomingFriends(user3.getId())).isEmpty();
+
+        // после фиксации граф меняется
+        transaction.executeWithoutResult(status -> friendshipStorage.addFriend(user1.getId(), user3.getId()));
+        assertThat(friendGraph.getFriends(user1.getId())).containsExactly(user2.getId(), user3.getId());
+    }
+
+    @Test
+    public void shouldKeepLatestFeedEvents() { // в ленте хранятся только последние записи
+
+        friendGraph.addFriend(100L, 1L);
+        Instant start = Instant.now();
+
+        for (int i = 0; i < FriendFeedTimelines.TIMELINE_SIZE + 50; i++) {
+            feedTimelines.append(100L, i, 1L, start.plusSeconds(i));
+        }
+
+        List<FeedEvent> feed = feedTimelines.listFeed(100L, 1_000);
+
+        assertThat(feed).asList().hasSize(FriendFeedTimelines.TIMELINE_SIZE);
+        assertThat(feed.get(0).getFilmId()).isEqualTo(FriendFeedTimelines.TIMELINE_SIZE + 49);
+        assertThat(feed.get(FriendFeedTimelines.TIMELINE_SIZE - 1).getFilmId()).isEqualTo(50);
+
+        // удаление записи из заполненного буфера сохраняет порядок остальных
+        feedTimelines.removeLike(120, 1L);
+        feedTimelines.awaitPendingEvents();
+
+        feed = feedTimelines.listFeed(100L, 1_000);
+        assertThat(feed).asList().hasSize(FriendFeedTimelines.TIMELINE_SIZE - 1).doesNotContain(
+                new FeedEvent(120, 1L, start.plusSeconds(120)));
+        assertThat(feed.get(0).getFilmId()).isEqualTo(FriendFeedTimelines.TIMELINE_SIZE + 49);
+        assertThat(feed.get(28).getFilmId()).isEqualTo(121);
+        assertThat(feed.get(29).getFilmId()).isEqualTo(119);
+
+    }
+
+    @Test
+    public void shouldIntersectFriendListsOfDifferentSizes() { // пересечение списков друзей слиянием и поиском
+
+        long[] evenIds = LongStream.rangeClosed(1, 10_000).map(id -> id * 2).toArray();
+        long[] everyThirdId = LongStream.rangeClosed(1, 5_000).map(id -> id * 3).toArray();
+        long[] fewIds = {3, 4, 6, 19_998, 20_000, 20_002};
+
+        friendGraph.putFriends(100L, evenIds);
+        friendGraph.putFriends(101L, everyThirdId);
+        friendGraph.putFriends(102L, fewIds);
+
+        // списки близкого размера - общие id кратны шести
+        assertThat(friendGraph.listCommonFriends(100L, 101L))
+                .containsExactly(LongStream.rangeClosed(1, 2_500).map(id -> id * 6).toArray());
+
+        // короткий список ищется в длинном
+        assertThat(friendGraph.listCommonFriends(102L, 100L)).containsExactly(4, 6, 19_998, 20_000);
+        assertThat(friendGraph.listCommonFriends(101L, 102L)).containsExactly(3, 6);
+        assertThat(friendGraph.listCommonFriends(100L, 103L)).isEmpty();
+
+        // добавление и удаление друга сохраняют порядок id
+        friendGraph.addFriend(102L, 5L);
+        friendGraph.removeFriend(102L, 19_998L);
+
+        assertThat(friendGraph.getFriends(102L)).containsExactly(3, 4, 5, 6, 20_000, 20_002);
+
+    }
+
+    @Test
+    public void shouldCountFriendsWithoutQueries() { // количество друзей и общих друзей считается по графу в памяти
+
+        User user1 = userStorage.addUser(userAlex1);
+        User user2 = userStorage.addUser(userEgor2);
+        User user3 = userStorage.addUser(userAnna3);
+        User user4 = userStorage.addUser(userOlga4);
+
+        userService.addFriend(user1.getId(), user2.getId());
+        userService.addFriend(user1.getId(), user3.getId());
+        userService.addFriend(user1.getId(), user4.getId());
+        userService.addFriend(user2.getId(), user3.getId());
+        userService.addFriend(user2.getId(), user4.getId());
+
+        StatementCounter.reset();
+
+        assertThat(friendshipStorage.countUserFriends(user1.getId())).isEqualTo(3);
+        assertThat(friendshipStorage.countUserFriends(user3.getId())).isEqualTo(0);
+        assertThat(friendshipStorage.countCommonFriends(user1.getId(), user2.getId())).isEqualTo(2);
+        assertThat(friendshipStorage.countCommonFriends(user1.getId(), user3.getId())).isEqualTo(0);
+
+        assertThat(StatementCounter.count()).isEqualTo(0);
+
+        // сервис проверяет существование пользователей, но не загружает их
+        StatementCounter.reset();
+        assertThat(userService.countCommonFriends(user2.getId(), user1.getId())).isEqualTo(2);
+        assertThat(StatementCounter.count()).isEqualTo(2);
+
+        assertThatThrownBy(() -> userService.countUserFriends(999L)).isInstanceOf(ObjectNotFoundException.class);
+
+    }
+
+    @Test
+    public void shouldCountFilmLikesFromCounter() { // количество лайков берется из счетчика в таблице films
+
+        User user1 = userStorage.addUser(userAlex1);
+        User user2 = userStorage.addUser(userEgor2);
+        Film film1 = filmStorage.addFilm(filmAllHatesCris);
+
+        filmService.addLike(film1.getId(), user1.getId());
+        filmService.addLike(film1.getId(), user2.getId());
+
+        StatementCounter.reset();
+        assertThat(filmService.getFilmLikesCount(film1.getId())).isEqualTo(2);
+        assertThat(StatementCounter.count()).isEqualTo(2);
+
+        assertThatThrownBy(() -> filmService.getFilmLikesCount(999)).isInstanceOf(ObjectNotFoundException.class);
+
+    }
+
     @Test
     public void shouldGetEmptyCommonFriendList() { // получение пустого списка общих друзей
 
@@ -331,6 +810,121 @@ public class FilmorateDbApplicationTest {
 
     }
 
+    @Test
+    public void shouldKeepFriendshipConsistentUnderConcurrentChanges() throws Exception {
+        // одновременные добавления и удаления дружбы одной пары пользователей с обеих сторон
+
+        User user1 = userStorage.addUser(userAlex1);
+        User user2 = userStorage.addUser(userEgor2);
+
+        int threads = 8;
+        int iterations = 40;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+
+            int thread = t;
+            long userId = (thread % 2 == 0) ? user1.getId() : user2.getId();
+            long friendId = (thread % 2 == 0) ? user2.getId() : user1.getId();
+
+            results.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < iterations; i++) {
+                    if ((i + thread) % 3 == 0) {
+                        friendshipStorage.deleteFriend(userId, friendId);
+                    } else {
+                        friendshipStorage.addFriend(userId, friendId);
+                    }
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get(2, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        // дружба подтверждена тогда и только тогда, когда есть обе заявки, граф совпадает с таблицей
+        boolean forward = hasFriendshipRow(user1.getId(), user2.getId());
+        boolean backward = hasFriendshipRow(user2.getId(), user1.getId());
+
+        assertThat(friendshipStorage.isFriendshipConfirmed(user1.getId(), user2.getId()))
+                .isEqualTo(forward && backward);
+        assertThat(friendshipStorage.isFriendshipConfirmed(user2.getId(), user1.getId()))
+                .isEqualTo(forward && backward);
+        assertThat(friendGraph.hasFriend(user1.getId(), user2.getId())).isEqualTo(forward);
+        assertThat(friendGraph.hasFriend(user2.getId(), user1.getId())).isEqualTo(backward);
+
+        // из любого состояния после встречных заявок дружба взаимна
+        friendshipStorage.addFriend(user1.getId(), user2.getId());
+        friendshipStorage.addFriend(user2.getId(), user1.getId());
+
+        assertThat(friendshipStorage.isFriendshipConfirmed(user1.getId(), user2.getId())).isTrue();
+        assertThat(friendshipStorage.isFriendshipConfirmed(user2.getId(), user1.getId())).isTrue();
+
+    }
+
+    @Test
+    public void shouldConfirmFriendshipOnSimultaneousRequests() throws Exception {
+        // встречные заявки новых пар пользователей подаются одновременно - дружба каждой пары взаимна
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        for (int i = 0; i < 50; i++) {
+
+            long userId = userStorage.addUser(userAlex1.toBuilder()
+                    .email("alex" + i + "@yandex.ru").login("alex" + i).build()).getId();
+            long friendId = userStorage.addUser(userEgor2.toBuilder()
+                    .email("egor" + i + "@yandex.ru").login("egor" + i).build()).getId();
+
+            CountDownLatch start = new CountDownLatch(1);
+            Future<?> request = executor.submit(() -> {
+                start.await();
+                friendshipStorage.addFriend(userId, friendId);
+                return null;
+            });
+            Future<?> counterRequest = executor.submit(() -> {
+                start.await();
+                friendshipStorage.addFriend(friendId, userId);
+                return null;
+            });
+
+            start.countDown();
+            request.get(1, TimeUnit.MINUTES);
+            counterRequest.get(1, TimeUnit.MINUTES);
+
+            assertThat(friendshipStorage.isFriendshipConfirmed(userId, friendId)).isTrue();
+            assertThat(friendshipStorage.isFriendshipConfirmed(friendId, userId)).isTrue();
+        }
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void shouldChangeFriendshipInTwoStatements() { // два условных изменения строк пары в одной транзакции
+
+        User user1 = userStorage.addUser(userAlex1);
+        User user2 = userStorage.addUser(userEgor2);
+
+        friendshipStorage.addFriend(user1.getId(), user2.getId());
+
+        StatementCounter.reset();
+        friendshipStorage.addFriend(user2.getId(), user1.getId());
+        assertThat(StatementCounter.count()).isEqualTo(2);
+        assertThat(friendshipStorage.isFriendshipConfirmed(user1.getId(), user2.getId())).isTrue();
+
+        StatementCounter.reset();
+        friendshipStorage.deleteFriend(user1.getId(), user2.getId());
+        assertThat(StatementCounter.count()).isEqualTo(2);
+        assertThat(friendshipStorage.isFriendshipConfirmed(user2.getId(), user1.getId())).isFalse();
+        assertThat(hasFriendshipRow(user2.getId(), user1.getId())).isTrue();
+
+    }
+
     @Test
     public void shouldConfirmMutualFriendship() { // подтверждение наличия двусторонней дружбы
 
@@ -385,6 +979,130 @@ public class FilmorateDbApplicationTest {
 
     }
 
+    @Test
+    public void shouldAddFilmsToMemoryFromManyThreads() throws Exception {
+        // одновременное добавление, чтение и обновление фильмов в хранилище в памяти из 64 потоков
+
+        int threads = 64;
+        int filmsPerThread = 100;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<Integer>>> results = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+
+            int thread = t;
+            results.add(executor.submit(() -> {
+                start.await();
+                List<Integer> ids = new ArrayList<>();
+                for (int i = 0; i < filmsPerThread; i++) {
+                    Film film = inMemoryFilmStorage.addFilm(filmAllHatesCris.toBuilder()
+                            .name("Film " + thread + "-" + i).build());
+                    ids.add(film.getId());
+
+                    // чтение и обновление только что добавленного фильма
+                    Film added = inMemoryFilmStorage.getFilmById(film.getId());
+                    inMemoryFilmStorage.updateFilm(added.toBuilder().description("Updated " + thread).build());
+                    inMemoryFilmStorage.listFilmsPage(Math.max(0, film.getId() - 10), 10);
+                }
+                return ids;
+            }));
+        }
+
+        start.countDown();
+        Set<Integer> allIds = new HashSet<>();
+        for (int t = 0; t < threads; t++) {
+            List<Integer> ids = results.get(t).get(2, TimeUnit.MINUTES);
+            allIds.addAll(ids);
+            for (int i = 0; i < filmsPerThread; i++) {
+                Film film = inMemoryFilmStorage.getFilmById(ids.get(i));
+                assertThat(film.getName()).isEqualTo("Film " + t + "-" + i);
+                assertThat(film.getDescription()).isEqualTo("Updated " + t);
+            }
+        }
+        executor.shutdown();
+
+        // ни один id не потерян и не выдан дважды, перебор по id видит все фильмы по порядку
+        int total = threads * filmsPerThread;
+        assertThat(List.copyOf(allIds)).asList().hasSize(total);
+        assertThat(List.copyOf(new TreeSet<>(allIds))).asList()
+                .isEqualTo(IntStream.rangeClosed(1, total).boxed().collect(Collectors.toList()));
+        assertThat(inMemoryFilmStorage.listFilms()).asList().extracting("id")
+                .isEqualTo(IntStream.rangeClosed(1, total).boxed().collect(Collectors.toList()));
+        assertThat(inMemoryFilmStorage.listFilmsPage(total - 5, 10)).asList().extracting("id")
+                .containsExactly(total - 4, total - 3, total - 2, total - 1, total);
+
+    }
+
+    @Test
+    public void shouldCountInMemoryLikesFromManyThreads() throws Exception {
+        // одновременные лайки и их удаление в хранилище в памяти из 32 потоков - счетчик без потерянных изменений
+
+        Film film = inMemoryFilmStorage.addFilm(filmAllHatesCris);
+        Film other = inMemoryFilmStorage.addFilm(filmTomAndJerry);
+        int filmId = film.getId();
+
+        int threads = 32;
+        int usersPerThread = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+
+            long firstUserId = (long) t * usersPerThread + 1;
+            results.add(executor.submit(() -> {
+                start.await();
+                for (long userId = firstUserId; userId < firstUserId + usersPerThread; userId++) {
+                    inMemoryLikeStorage.addLike(filmId, userId);
+                    // каждый второй пользователь удаляет лайк, каждый третий ставит его второй раз
+                    if (userId % 2 == 0) {
+                        inMemoryLikeStorage.deleteLike(filmId, userId);
+                    } else if (userId % 3 == 0) {
+                        long secondLikeUserId = userId;
+                        assertThatThrownBy(() -> inMemoryLikeStorage.addLike(filmId, secondLikeUserId))
+                                .hasMessage("Вы уже ставили лайк этому фильму");
+                    }
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get(2, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        long expected = (long) threads * usersPerThread / 2;
+        assertThat(inMemoryLikeStorage.getFilmLikesTotalCount(filmId)).isEqualTo(expected);
+        assertThat(inMemoryFilmStorage.getFilmById(filmId).getLikes()).isEqualTo(expected);
+        assertThat(inMemoryFilmStorage.getFilmsLikesCount().get(filmId)).isEqualTo(expected);
+        assertThat(inMemoryFilmStorage.getFilmsLikesCount().get(other.getId())).isEqualTo(0L);
+        assertThat(inMemoryFilmStorage.getFilmById(other.getId()).getLikes()).isEqualTo(0L);
+
+    }
+
+    @Test
+    public void shouldFindFilmByIdWithSingleQuery() { // получение фильма по id одним запросом к базе данных
+
+        User user1 = userStorage.addUser(userAlex1);
+        Film film = filmStorage.addFilm(filmAllHatesCris);
+        likeStorage.addLike(film.getId(), user1.getId());
+
+        StatementCounter.reset();
+        Film foundFilm = filmStorage.getFilmById(film.getId());
+
+        assertThat(StatementCounter.count()).isEqualTo(1);
+        assertThat(foundFilm)
+                .hasFieldOrPropertyWithValue("id", film.getId())
+                .hasFieldOrPropertyWithValue("likes", 1L)
+                .hasFieldOrPropertyWithValue("mpa", new Mpa(1, "G"))
+                .hasFieldOrPropertyWithValue("genres",
+                        Set.of(new FilmGenre(2, "Драма"), new FilmGenre(3, "Мультфильм")));
+
+    }
+
     @Test
     public void shouldUpdateFilm() { // обновление информации о фильме
 
@@ -434,6 +1152,39 @@ public class FilmorateDbApplicationTest {
                                 .hasFieldOrPropertyWithValue("genres", genresNew));
     }
 
+    @Test
+    public void shouldUpdateFilmGenresInBatch() { // обновление жанров фильма пакетом запросов в одной транзакции
+
+        Film film = filmStorage.addFilm(filmAllHatesCris.toBuilder()
+                .genres(Set.of(new FilmGenre(1, null), new FilmGenre(2, null))).build());
+
+        // обновление фильма: запрос к films, удаление лишних жанров и пакетное добавление новых
+        Film updatedFilm = film.toBuilder()
+                .genres(Set.of(new FilmGenre(2, null), new FilmGenre(3, null), new FilmGenre(4, null))).build();
+
+        StatementCounter.reset();
+        filmStorage.updateFilmData(updatedFilm);
+
+        assertThat(StatementCounter.count()).isEqualTo(3);
+        assertThat(List.copyOf(filmStorage.getFilmById(film.getId()).getGenres())).asList().extracting("id")
+                .containsExactly(2, 3, 4);
+
+        // ошибка при сохранении жанров отменяет все изменения фильма
+        Film invalidFilm = updatedFilm.toBuilder().name("INVALID")
+                .genres(Set.of(new FilmGenre(1, null), new FilmGenre(99, null))).build();
+
+        try {
+            filmStorage.updateFilmData(invalidFilm);
+        } catch (RuntimeException ignored) {
+            // ожидаемое исключение при несуществующем жанре
+        }
+
+        Film savedFilm = filmStorage.getFilmById(film.getId());
+        assertThat(savedFilm).hasFieldOrPropertyWithValue("name", film.getName());
+        assertThat(List.copyOf(savedFilm.getGenres())).asList().extracting("id").containsExactly(2, 3, 4);
+
+    }
+
     @Test
     public void shouldListFilms() { // получение списка фильмов
 
@@ -478,6 +1229,77 @@ public class FilmorateDbApplicationTest {
     }
 
 
+    @Test
+    public void shouldListFilmsByPages() { // постраничное получение списка фильмов с жанрами
+
+        Film film1 = filmStorage.addFilm(filmAllHatesCris);
+        Film film2 = filmStorage.addFilm(filmDiamondHand);
+        Film film3 = filmStorage.addFilm(filmTomAndJerry);
+
+        StatementCounter.reset();
+        List<Film> firstPage = filmStorage.listFilmsPage(0, 2);
+
+        // один запрос на страницу фильмов и один на их жанры
+        assertThat(StatementCounter.count()).isEqualTo(2);
+        assertThat(firstPage).asList()
+                .containsExactly(filmStorage.getFilmById(film1.getId()), filmStorage.getFilmById(film2.getId()));
+        assertThat(filmStorage.listFilmsPage(film2.getId(), 2)).asList()
+                .containsExactly(filmStorage.getFilmById(film3.getId()));
+        assertThat(filmStorage.listFilmsPage(film3.getId(), 2)).asList().isEmpty();
+
+    }
+
+    @Test
+    public void shouldProcessAllFilmsWithSingleQuery() { // выгрузка всех фильмов с жанрами одним запросом
+
+        Film film1 = filmStorage.addFilm(filmAllHatesCris);
+        Film film2 = filmStorage.addFilm(filmDiamondHand);
+        Film film3 = filmStorage.addFilm(filmTomAndJerry);
+
+        List<Film> films = new ArrayList<>();
+
+        StatementCounter.reset();
+        filmStorage.processFilms(films::add);
+
+        assertThat(StatementCounter.count()).isEqualTo(1);
+        assertThat(films).asList().containsExactly(filmStorage.getFilmById(film1.getId()),
+                filmStorage.getFilmById(film2.getId()), filmStorage.getFilmById(film3.getId()));
+
+    }
+
+    @Test
+    public void shouldListFilmsWithSingleQuery() { // получение полного списка фильмов одним запросом к базе данных
+
+        User user1 = userStorage.addUser(userAlex1);
+        User user2 = userStorage.addUser(userEgor2);
+        Film film1 = filmStorage.addFilm(filmAllHatesCris);
+        Film film2 = filmStorage.addFilm(filmDiamondHand);
+        filmStorage.addFilm(filmTomAndJerry);
+
+        likeStorage.addLike(film1.getId(), user1.getId());
+        likeStorage.addLike(film1.getId(), user2.getId());
+        likeStorage.addLike(film2.getId(), user1.getId());
+
+        StatementCounter.reset();
+        List<Film> listFilms = filmStorage.listFilms();
+
+        assertThat(StatementCounter.count()).isEqualTo(1);
+        assertThat(listFilms).asList().hasSize(3);
+
+        assertThat(listFilms.get(0))
+                .hasFieldOrPropertyWithValue("likes", 2L)
+                .hasFieldOrPropertyWithValue("mpa", new Mpa(1, "G"))
+                .hasFieldOrPropertyWithValue("genres",
+                        Set.of(new FilmGenre(2, "Драма"), new FilmGenre(3, "Мультфильм")));
+        assertThat(listFilms.get(1))
+                .hasFieldOrPropertyWithValue("likes", 1L)
+                .hasFieldOrPropertyWithValue("mpa", new Mpa(2, "PG"))
+                .hasFieldOrPropertyWithValue("genres", Set.of());
+        assertThat(listFilms.get(2))
+                .hasFieldOrPropertyWithValue("likes", 0L);
+
+    }
+
     @Test
     public void shouldAddLike() { // добавление лайка
         User user1 = userStorage.addUser(userAlex1);
@@ -504,6 +1326,32 @@ public class FilmorateDbApplicationTest {
 
     }
 
+    @Test
+    public void shouldKeepLikesCounterInFilm() { // счетчик лайков фильма меняется вместе с таблицей likes
+
+        User user1 = userStorage.addUser(userAlex1);
+        User user2 = userStorage.addUser(userEgor2);
+        Film film1 = filmStorage.addFilm(filmAllHatesCris);
+
+        likeStorage.addLike(film1.getId(), user1.getId());
+        likeStorage.addLike(film1.getId(), user2.getId());
+
+        assertThat(filmStorage.getFilmById(film1.getId())).hasFieldOrPropertyWithValue("likes", 2L);
+
+        // повторный лайк не меняет счетчик
+        try {
+            likeStorage.addLike(film1.getId(), user1.getId());
+        } catch (RuntimeException ignored) {
+            // ожидаемое исключение при повторном лайке
+        }
+
+        likeStorage.deleteLike(film1.getId(), user2.getId());
+
+        assertThat(filmStorage.getFilmById(film1.getId())).hasFieldOrPropertyWithValue("likes", 1L);
+        assertThat(likeStorage.getFilmLikesTotalCount(film1.getId())).isEqualTo(1);
+
+    }
+
     @Test
     public void shouldListMostPopularFilms() { // получение списка наиболее популярных фильмов
 
@@ -512,18 +1360,18 @@ public class FilmorateDbApplicationTest {
         User user2 = userStorage.addUser(userEgor2);
         User user3 = userStorage.addUser(userAnna3);
 
-        Film film1 = filmStorage.addFilm(filmAllHatesCris);
-        Film film2 = filmStorage.addFilm(filmDiamondHand);
-        Film film3 = filmStorage.addFilm(filmTomAndJerry);
+        Film film1 = filmService.addFilm(filmAllHatesCris);
+        Film film2 = filmService.addFilm(filmDiamondHand);
+        Film film3 = filmService.addFilm(filmTomAndJerry);
 
         // ставим лайки фильмам 1 (3 штуки) и 2 (1 штука)
-        likeStorage.addLike(film1.getId(), user1.getId());
-        likeStorage.addLike(film1.getId(), user2.getId());
-        likeStorage.addLike(film1.getId(), user3.getId());
-        likeStorage.addLike(film2.getId(), user1.getId());
+        filmService.addLike(film1.getId(), user1.getId());
+        filmService.addLike(film1.getId(), user2.getId());
+        filmService.addLike(film1.getId(), user3.getId());
+        filmService.addLike(film2.getId(), user1.getId());
 
         // получаем список фильмов отсортированных по количеству лайков
-        List<Film> listFilms = filmStorage.listMostPopularFilms(10);
+        List<Film> listFilms = filmService.listMostPopularFilms(10);
 
         // проверяем корректность полученных данных - 3 фильма,
 
@@ -559,18 +1407,18 @@ public class FilmorateDbApplicationTest {
         User user2 = userStorage.addUser(userEgor2);
         User user3 = userStorage.addUser(userAnna3);
 
-        Film film1 = filmStorage.addFilm(filmAllHatesCris);
-        Film film2 = filmStorage.addFilm(filmDiamondHand);
-        Film film3 = filmStorage.addFilm(filmTomAndJerry);
+        Film film1 = filmService.addFilm(filmAllHatesCris);
+        Film film2 = filmService.addFilm(filmDiamondHand);
+        Film film3 = filmService.addFilm(filmTomAndJerry);
 
         // ставим лайки фильмам 1 (3 штуки) и 2 (1 штука)
-        likeStorage.addLike(film1.getId(), user1.getId());
-        likeStorage.addLike(film1.getId(), user2.getId());
-        likeStorage.addLike(film1.getId(), user3.getId());
-        likeStorage.addLike(film2.getId(), user1.getId());
+        filmService.addLike(film1.getId(), user1.getId());
+        filmService.addLike(film1.getId(), user2.getId());
+        filmService.addLike(film1.getId(), user3.getId());
+        filmService.addLike(film2.getId(), user1.getId());
 
         // получаем список фильмов отсортированных по количеству лайков (ограничение размера - 2 фильма)
-        List<Film> listFilms = filmStorage.listMostPopularFilms(2);
+        List<Film> listFilms = filmService.listMostPopularFilms(2);
 
         // проверяем корректность полученных данных - 3 фильма,
 
@@ -596,6 +1444,126 @@ public class FilmorateDbApplicationTest {
     }
 
 
+    @Test
+    public void shouldListMostPopularFilmsWithBatchedGenres() { // жанры списка фильмов загружаются одним запросом
+
+        User user1 = userStorage.addUser(userAlex1);
+        Film film1 = filmService.addFilm(filmAllHatesCris);
+        Film film2 = filmService.addFilm(filmDiamondHand.toBuilder().genres(Set.of(new FilmGenre(6, null))).build());
+        filmService.addFilm(filmTomAndJerry);
+
+        filmService.addLike(film2.getId(), user1.getId());
+
+        StatementCounter.reset();
+        List<Film> listFilms = filmService.listMostPopularFilms(10);
+
+        // один запрос для фильмов и один для жанров всех фильмов списка
+        assertThat(StatementCounter.count()).isEqualTo(2);
+        assertThat(listFilms).asList().hasSize(3);
+
+        assertThat(listFilms.get(0))
+                .hasFieldOrPropertyWithValue("id", film2.getId())
+                .hasFieldOrPropertyWithValue("genres", Set.of(new FilmGenre(6, "Боевик")));
+        assertThat(listFilms.get(1))
+                .hasFieldOrPropertyWithValue("id", film1.getId())
+                .hasFieldOrPropertyWithValue("genres",
+                        Set.of(new FilmGenre(2, "Драма"), new FilmGenre(3, "Мультфильм")));
+        assertThat(listFilms.get(2))
+                .hasFieldOrPropertyWithValue("genres", Set.of());
+
+    }
+
+    @Test
+    public void shouldRebuildLeaderboardFromStorage() { // построение рейтинга популярности по данным хранилища
+
+        User user1 = userStorage.addUser(userAlex1);
+        User user2 = userStorage.addUser(userEgor2);
+
+        Film film1 = filmStorage.addFilm(filmAllHatesCris);
+        Film film2 = filmStorage.addFilm(filmDiamondHand);
+        Film film3 = filmStorage.addFilm(filmTomAndJerry);
+
+        likeStorage.addLike(film3.getId(), user1.getId());
+        likeStorage.addLike(film3.getId(), user2.getId());
+        likeStorage.addLike(film1.getId(), user1.getId());
+
+        leaderboard.rebuild();
+
+        assertThat(leaderboard.listTopFilmIds(10)).asList()
+                .containsExactly(film3.getId(), film1.getId(), film2.getId());
+
+        // изменение лайков сдвигает фильм в рейтинге
+        leaderboard.changeLikes(film2.getId(), 3);
+        leaderboard.changeLikes(film3.getId(), -1);
+
+        assertThat(leaderboard.listTopFilmIds(2)).asList()
+                .containsExactly(film2.getId(), film1.getId());
+
+    }
+
+    @Test
+    public void shouldListTrendingFilms() { // получение фильмов, набравших больше всего лайков за период
+
+        User user1 = userStorage.addUser(userAlex1);
+        User user2 = userStorage.addUser(userEgor2);
+
+        Film film1 = filmStorage.addFilm(filmAllHatesCris);
+        Film film2 = filmStorage.addFilm(filmDiamondHand);
+        Film film3 = filmStorage.addFilm(filmTomAndJerry);
+
+        likeStorage.addLike(film2.getId(), user1.getId());
+        likeStorage.addLike(film2.getId(), user2.getId());
+        likeStorage.addLike(film1.getId(), user1.getId());
+
+        // лайк, поставленный трое суток назад, учитывается только в недельном периоде
+        Instant threeDaysAgo = Instant.now().minus(Duration.ofDays(3));
+        trendingCounter.registerLike(film3.getId(), threeDaysAgo);
+        trendingCounter.registerLike(film3.getId(), threeDaysAgo);
+        trendingCounter.registerLike(film3.getId(), threeDaysAgo);
+
+        assertThat(trendingCounter.listTrendingFilmIds(Duration.ofHours(24), 10)).asList()
+                .containsExactly(film2.getId(), film1.getId());
+        assertThat(trendingCounter.listTrendingFilmIds(Duration.ofDays(7), 2)).asList()
+                .containsExactly(film3.getId(), film2.getId());
+
+        // удаление лайка уменьшает счетчик текущего часа
+        likeStorage.deleteLike(film2.getId(), user1.getId());
+        likeStorage.deleteLike(film2.getId(), user2.getId());
+
+        assertThat(trendingCounter.listTrendingFilmIds(Duration.ofHours(24), 10)).asList()
+                .containsExactly(film1.getId());
+
+        // счетчики восстанавливаются из базы данных по времени лайков
+        ((LikeDbStorage) likeStorage).loadRecentLikes();
+
+        assertThat(trendingCounter.listTrendingFilmIds(Duration.ofDays(7), 10)).asList()
+                .containsExactly(film1.getId());
+
+    }
+
+    @Test
+    public void shouldNotCountRolledBackLikes() { // откаченный лайк не попадает в счетчики за период
+
+        User user1 = userStorage.addUser(userAlex1);
+        Film film1 = filmStorage.addFilm(filmAllHatesCris);
+        Film film2 = filmStorage.addFilm(filmDiamondHand);
+
+        likeStorage.addLike(film2.getId(), user1.getId());
+
+        // лайк и удаление лайка во внешней транзакции, которая затем откатывается
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.executeWithoutResult(status -> {
+            likeStorage.addLike(film1.getId(), user1.getId());
+            likeStorage.deleteLike(film2.getId(), user1.getId());
+            status.setRollbackOnly();
+        });
+
+        assertThat(likeStorage.getFilmLikesTotalCount(film1.getId())).isZero();
+        assertThat(trendingCounter.listTrendingFilmIds(Duration.ofHours(24), 10)).asList()
+                .containsExactly(film2.getId());
+
+    }
+
     //************************* Тестирование работы сервиса работы с рейтингами MPA *************************
 
     @Test
@@ -662,13 +1630,53 @@ public class FilmorateDbApplicationTest {
                 .hasFieldOrPropertyWithValue("name", name5);
     }
 
+    @Test
+    public void shouldServeReferenceDataFromRegistry() { // справочники рейтингов и жанров не обращаются к базе данных
 
-}
+        StatementCounter.reset();
 
+        Mpa mpa = mpaStorage.getRatingMpaById(3);
+        FilmGenre genre = genreStorage.getGenreById(2);
+        mpaStorage.listRatingMpa();
+        genreStorage.listFilmGenres();
 
+        assertThat(StatementCounter.count()).isEqualTo(0);
 
+        // повторный запрос возвращает тот же объект справочника
+        assertThat(mpaStorage.getRatingMpaById(3)).isSameAs(mpa);
+        assertThat(genreStorage.getGenreById(2)).isSameAs(genre);
 
+        // после изменения таблицы справочник перечитывается
+        jdbcTemplate.update("INSERT INTO genres (genre_id, genre_name) VALUES (7, 'Вестерн')");
+        referenceData.reload();
 
+        assertThat(genreStorage.listFilmGenres()).asList().hasSize(7);
+        assertThat(genreStorage.getGenreById(7)).hasFieldOrPropertyWithValue("name", "Вестерн");
 
+    }
+
+    @Test
+    public void shouldReadFilmWithoutRatingWithoutReload() { // фильм без рейтинга читается без перечитывания справочника
+
+        Film film1 = filmStorage.addFilm(filmAllHatesCris);
+        jdbcTemplate.update("UPDATE films SET rating_mpa_id = NULL WHERE film_id = ?", film1.getId());
+
+        StatementCounter.reset();
+        Film film = filmStorage.getFilmById(film1.getId());
+        filmStorage.listFilmsPage(0, 10);
 
+        assertThat(StatementCounter.count()).isEqualTo(3);
+        assertThat(film.getMpa()).isNull();
+        assertThat(film.getGenres().size()).isEqualTo(2);
 
+    }
+
+    // проверка наличия в таблице заявки на дружбу от пользователя
+    private boolean hasFriendshipRow(Long userId, Long friendId) {
+
+        Integer rows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM friendship "
+                + "WHERE initiator_id = ? AND recipient_id = ?", Integer.class, userId, friendId);
+        return rows != null && rows > 0;
+    }
+
+}
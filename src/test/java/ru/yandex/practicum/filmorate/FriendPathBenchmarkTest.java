@@ -0,0 +1,122 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import ru.yandex.practicum.filmorate.exceptions.SearchLimitExceededException;
+import ru.yandex.practicum.filmorate.storage.index.FriendGraphIndex;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// замер времени поиска цепочки друзей на графе со степенным распределением числа друзей
+// (граф строится предпочтительным присоединением: новый пользователь чаще добавляет в друзья популярных)
+// запуск: mvn test -Dtest=FriendPathBenchmarkTest -Dbenchmark=true
+@Slf4j
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class FriendPathBenchmarkTest {
+
+    private static final int USERS = 200_000;
+    private static final int FRIENDS_PER_NEW_USER = 5;
+    private static final int SEARCHES = 2_000;
+    private static final int MAX_HOPS = 6;
+
+    @Test
+    public void shouldFindPathsOnPowerLawGraph() {
+
+        FriendGraphIndex friendGraph = new FriendGraphIndex();
+        friendGraph.load(buildPowerLawGraph(new Random(19)));
+
+        Random random = new Random(6);
+
+        // прогрев
+        for (int i = 0; i < SEARCHES; i++) {
+            findPath(friendGraph, 1 + random.nextInt(USERS), 1 + random.nextInt(USERS));
+        }
+
+        long[] times = new long[SEARCHES];
+        int found = 0;
+        int limited = 0;
+        int totalHops = 0;
+
+        for (int i = 0; i < SEARCHES; i++) {
+
+            long userId = 1 + random.nextInt(USERS);
+            long otherId = 1 + random.nextInt(USERS);
+
+            long start = System.nanoTime();
+            long[] path = findPath(friendGraph, userId, otherId);
+            times[i] = System.nanoTime() - start;
+
+            if (path == null) {
+                limited++;
+            } else if (path.length > 0) {
+                found++;
+                totalHops += path.length - 1;
+            }
+        }
+
+        Arrays.sort(times);
+        long p50 = times[SEARCHES / 2] / 1_000;
+        long p99 = times[SEARCHES * 99 / 100] / 1_000;
+        long max = times[SEARCHES - 1] / 1_000;
+
+        log.info("Пользователей: {}, поисков: {}, найдено цепочек: {}, прервано ограничением: {}, "
+                        + "средняя длина: {}, время p50: {} мкс, p99: {} мкс, максимум: {} мкс",
+                USERS, SEARCHES, found, limited, (found > 0) ? (double) totalHops / found : 0, p50, p99, max);
+
+        assertThat(found).isGreaterThan(SEARCHES / 2);
+        assertThat(p99).isLessThan(100_000);
+    }
+
+    // поиск цепочки; null - поиск прерван ограничением на обход
+    private static long[] findPath(FriendGraphIndex friendGraph, long userId, long otherId) {
+
+        try {
+            return friendGraph.findPath(userId, otherId, MAX_HOPS);
+        } catch (SearchLimitExceededException e) {
+            return null;
+        }
+    }
+
+    // граф предпочтительного присоединения: каждый новый пользователь добавляет в друзья FRIENDS_PER_NEW_USER
+    // пользователей с вероятностью, пропорциональной числу их связей, половина заявок становится взаимной
+    private static Map<Long, long[]> buildPowerLawGraph(Random random) {
+
+        Map<Long, TreeSet<Long>> friends = new HashMap<>();
+
+        // концы всех связей - случайный элемент выбирает пользователя пропорционально числу его связей
+        long[] endpoints = new long[2 * USERS * FRIENDS_PER_NEW_USER];
+        int endpointsSize = 0;
+
+        for (long id = 1; id <= FRIENDS_PER_NEW_USER + 1; id++) {
+            endpoints[endpointsSize++] = id;
+        }
+
+        for (long id = FRIENDS_PER_NEW_USER + 2; id <= USERS; id++) {
+            for (int i = 0; i < FRIENDS_PER_NEW_USER; i++) {
+
+                long friendId = endpoints[random.nextInt(endpointsSize)];
+                friends.computeIfAbsent(id, key -> new TreeSet<>()).add(friendId);
+                if (random.nextBoolean()) {
+                    friends.computeIfAbsent(friendId, key -> new TreeSet<>()).add(id);
+                }
+
+                endpoints[endpointsSize++] = id;
+                endpoints[endpointsSize++] = friendId;
+            }
+        }
+
+        Map<Long, long[]> sortedFriends = new HashMap<>();
+        friends.forEach((id, userFriends) ->
+                sortedFriends.put(id, userFriends.stream().mapToLong(Long::longValue).toArray()));
+
+        return sortedFriends;
+    }
+
+}
@@ -0,0 +1,223 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmGenre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.memory.IdSetFactory;
+import ru.yandex.practicum.filmorate.storage.memory.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.memory.InMemoryFriendshipStorage;
+import ru.yandex.practicum.filmorate.storage.memory.InMemoryLikeStorage;
+import ru.yandex.practicum.filmorate.storage.memory.InMemorySnapshots;
+import ru.yandex.practicum.filmorate.storage.memory.InMemoryUserStorage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// запись и загрузка снимков хранилищ в памяти
+@Slf4j
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class InMemorySnapshotTest {
+
+    private final InMemoryFilmStorage filmStorage;
+    private final InMemoryUserStorage userStorage;
+    private final InMemoryLikeStorage likeStorage;
+    private final InMemoryFriendshipStorage friendshipStorage;
+    private final InMemorySnapshots snapshots;
+    private final IdSetFactory idSets;
+
+    @TempDir
+    Path snapshotDir;
+
+    @Test
+    public void shouldRestoreStoragesFromSnapshot() {
+
+        Film drama = filmStorage.addFilm(film("All Hates Cris", new Mpa(1, null),
+                Set.of(new FilmGenre(1, null), new FilmGenre(2, null))));
+        Film comedy = filmStorage.addFilm(film("Tom and Jerry", new Mpa(2, null), null));
+
+        User alex = userStorage.addUser(user("alex", null));
+        User egor = userStorage.addUser(user("egor", "Егор"));
+        User anna = userStorage.addUser(user("anna", "Анна"));
+
+        // Алекс и Егор дружат взаимно, Анна подала заявку Алексу
+        userStorage.updateUserProperties(alex.toBuilder().friends(ids(egor.getId())).build());
+        userStorage.updateUserProperties(egor.toBuilder().friends(ids(alex.getId())).build());
+        userStorage.updateUserProperties(anna.toBuilder().friends(ids(alex.getId())).build());
+        friendshipStorage.restoreMutualFriendship(alex.getId(), egor.getId());
+
+        likeStorage.addLike(drama.getId(), alex.getId());
+        likeStorage.addLike(drama.getId(), anna.getId());
+        likeStorage.addLike(comedy.getId(), egor.getId());
+
+        List<Film> films = filmStorage.listFilms();
+        List<User> users = userStorage.listUsers();
+
+        Path file = snapshotDir.resolve("filmorate.snapshot");
+        assertThat(snapshots.write(file)).isEqualTo(2 + 3 + 3 + 3);
+
+        // изменения после снимка при загрузке отбрасываются
+        filmStorage.addFilm(film("Diamond Hand", new Mpa(3, null), null));
+        userStorage.addUser(user("olga", "Ольга"));
+        likeStorage.deleteLike(drama.getId(), anna.getId());
+        likeStorage.addLike(comedy.getId(), alex.getId());
+
+        assertThat(snapshots.load(file)).isEqualTo(2 + 3 + 3 + 3);
+
+        assertThat(filmStorage.listFilms()).isEqualTo(films);
+        assertThat(filmStorage.getFilmById(drama.getId()).getLikes()).isEqualTo(2L);
+        assertThat(filmStorage.getFilmById(drama.getId()).getGenres()).extracting("name")
+                .containsExactly("Комедия", "Драма");
+        assertThat(filmStorage.getFilmById(comedy.getId()).getMpa().getName()).isEqualTo("PG");
+        assertThat(likeStorage.getFilmLikesTotalCount(comedy.getId())).isEqualTo(1L);
+        assertThat(userStorage.listUsers()).isEqualTo(users);
+        assertThat(friendshipStorage.isFriendshipConfirmed(alex.getId(), egor.getId())).isTrue();
+        assertThat(friendshipStorage.isFriendshipConfirmed(anna.getId(), alex.getId())).isFalse();
+
+        // после загрузки id продолжают выдаваться с наибольшего восстановленного
+        assertThat(filmStorage.addFilm(film("Diamond Hand", new Mpa(3, null), null)).getId()).isEqualTo(3);
+        assertThat(userStorage.addUser(user("olga", "Ольга")).getId()).isEqualTo(4L);
+        assertThat(likeStorage.getFilmLikesTotalCount(3)).isZero();
+
+    }
+
+    @Test
+    public void shouldRejectDamagedSnapshot() throws IOException {
+
+        filmStorage.addFilm(film("All Hates Cris", new Mpa(1, null), null));
+        userStorage.addUser(user("alex", null));
+
+        Path file = snapshotDir.resolve("filmorate.snapshot");
+        snapshots.write(file);
+
+        // изменение байта данных
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer data = ByteBuffer.allocate(1);
+            channel.read(data, channel.size() - 1);
+            data.put(0, (byte) (data.get(0) ^ 1));
+            channel.write(data.rewind(), channel.size() - 1);
+        }
+        assertThatThrownBy(() -> snapshots.load(file)).isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Контрольная сумма снимка не совпадает");
+
+        // снимок другой версии
+        snapshots.write(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, 99), 4);
+        }
+        assertThatThrownBy(() -> snapshots.load(file)).isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Неподдерживаемая версия снимка 99");
+
+        // обрезанный файл
+        snapshots.write(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+        assertThatThrownBy(() -> snapshots.load(file)).isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Файл снимка поврежден");
+
+        // неудачная загрузка не меняет хранилища
+        assertThat(filmStorage.listFilms()).hasSize(1);
+        assertThat(userStorage.listUsers()).hasSize(1);
+    }
+
+    // замер записи и загрузки снимка: 200 тыс. пользователей по 25 друзей, 5 тыс. фильмов по 1000 лайков
+    // (больше 10 млн записей)
+    // запуск: mvn test -Dtest=InMemorySnapshotTest -Dbenchmark=true
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    public void shouldLoadMillionsOfRecordsInSeconds() throws IOException {
+
+        int users = 200_000;
+        int friendsPerUser = 25;
+        int films = 5_000;
+        int likesPerFilm = 1_000;
+        Random random = new Random(24);
+
+        for (int i = 0; i < users; i++) {
+            Set<Long> friends = idSets.newIdSet();
+            while (friends.size() < friendsPerUser) {
+                friends.add(1L + random.nextInt(users));
+            }
+            userStorage.addUser(user("user" + i, "Пользователь " + i).toBuilder().friends(friends).build());
+        }
+        for (int i = 0; i < films; i++) {
+            Film film = filmStorage.addFilm(film("Film " + i, new Mpa(1 + i % 5, null), null));
+            long[] likers = random.longs(likesPerFilm * 2L, 1, users + 1).distinct().limit(likesPerFilm).toArray();
+            for (long userId : likers) {
+                likeStorage.addLike(film.getId(), userId);
+            }
+        }
+
+        Path file = snapshotDir.resolve("filmorate.snapshot");
+
+        long start = System.nanoTime();
+        long written = snapshots.write(file);
+        long writeMillis = (System.nanoTime() - start) / 1_000_000;
+
+        start = System.nanoTime();
+        long loaded = snapshots.load(file);
+        long loadMillis = (System.nanoTime() - start) / 1_000_000;
+
+        log.info("Записей: {}, размер снимка: {} МБ, запись: {} мс, загрузка: {} мс",
+                written, Files.size(file) >> 20, writeMillis, loadMillis);
+
+        assertThat(loaded).isEqualTo(written);
+        assertThat(userStorage.listUsers()).hasSize(users);
+        assertThat(likeStorage.getFilmLikesTotalCount(films)).isEqualTo(likesPerFilm);
+        assertThat(loadMillis).isLessThan(30_000);
+    }
+
+    private Set<Long> ids(Long... ids) {
+
+        Set<Long> set = idSets.newIdSet();
+        set.addAll(List.of(ids));
+        return set;
+    }
+
+    private static Film film(String name, Mpa mpa, Set<FilmGenre> genres) {
+
+        return Film.builder()
+                .name(name)
+                .description("Описание фильма " + name)
+                .releaseDate(LocalDate.of(1995, 12, 28))
+                .duration(100)
+                .mpa(mpa)
+                .genres(genres)
+                .build();
+    }
+
+    private static User user(String login, String name) {
+
+        return User.builder()
+                .email(login + "@yandex.ru")
+                .login(login)
+                .name(name)
+                .birthday(LocalDate.of(1990, 1, 15))
+                .build();
+    }
+
+}
@@ -0,0 +1,443 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmGenre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.memory.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.memory.InMemoryFriendshipStorage;
+import ru.yandex.practicum.filmorate.storage.memory.InMemoryLikeStorage;
+import ru.yandex.practicum.filmorate.storage.memory.InMemorySnapshots;
+import ru.yandex.practicum.filmorate.storage.memory.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.memory.InMemoryWriteAheadLog;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// журнал изменений хранилищ в памяти: повторение изменений после перезапуска (перезапуск - восстановление
+// хранилищ из снимка и журнала тем же способом, что и при запуске приложения)
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+public class InMemoryWriteAheadLogTest {
+
+    private static final Path DATA_DIR = createDataDir();
+    private static final Path WAL_DIR = DATA_DIR.resolve("wal");
+    private static final Path SNAPSHOT = DATA_DIR.resolve("filmorate.snapshot");
+
+    private final InMemoryFilmStorage filmStorage;
+    private final InMemoryUserStorage userStorage;
+    private final InMemoryLikeStorage likeStorage;
+    private final InMemoryFriendshipStorage friendshipStorage;
+    private final InMemorySnapshots snapshots;
+    private final InMemoryWriteAheadLog writeAheadLog;
+
+    @DynamicPropertySource
+    static void memoryProperties(DynamicPropertyRegistry registry) {
+
+        registry.add("filmorate.memory.wal.path", WAL_DIR::toString);
+        registry.add("filmorate.memory.wal.flush-interval-ms", () -> 5);
+        registry.add("filmorate.memory.wal.flush-records", () -> 64);
+        registry.add("filmorate.memory.snapshot.path", SNAPSHOT::toString);
+    }
+
+    @BeforeEach
+    public void startFromEmptyLog() throws IOException {
+
+        // удаление журнала и снимка предыдущего теста и восстановление пустых хранилищ
+        try (Stream<Path> files = Files.walk(DATA_DIR)) {
+            for (Path path : files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+        snapshots.recover();
+    }
+
+    @Test
+    public void shouldReplayChangesAfterRestart() {
+
+        Film drama = filmStorage.addFilm(film("All Hates Cris", Set.of(new FilmGenre(2, null))));
+        Film comedy = filmStorage.addFilm(film("Tom and Jerry", null));
+        filmStorage.updateFilm(comedy.toBuilder().description("Кот и мышь").build());
+
+        User alex = userStorage.addUser(user("alex"));
+        User egor = userStorage.addUser(user("egor"));
+        User anna = userStorage.addUser(user("anna"));
+
+        friendshipStorage.addFriend(alex.getId(), egor.getId());
+        friendshipStorage.addFriend(egor.getId(), alex.getId());
+        friendshipStorage.addFriend(anna.getId(), alex.getId());
+        friendshipStorage.addFriend(anna.getId(), egor.getId());
+        friendshipStorage.addFriend(egor.getId(), anna.getId());
+        friendshipStorage.deleteFriend(egor.getId(), anna.getId());
+
+        likeStorage.addLike(drama.getId(), alex.getId());
+        likeStorage.addLike(drama.getId(), egor.getId());
+        likeStorage.addLike(comedy.getId(), anna.getId());
+        likeStorage.deleteLike(drama.getId(), egor.getId());
+
+        List<Film> films = filmStorage.listFilms();
+        List<User> users = userStorage.listUsers();
+
+        snapshots.recover();
+
+        assertThat(filmStorage.listFilms()).isEqualTo(films);
+        assertThat(filmStorage.getFilmById(comedy.getId()).getDescription()).isEqualTo("Кот и мышь");
+        assertThat(filmStorage.getFilmById(drama.getId()).getGenres()).extracting("name").containsExactly("Драма");
+        assertThat(likeStorage.getFilmLikesTotalCount(drama.getId())).isEqualTo(1L);
+        assertThat(likeStorage.getFilmLikesTotalCount(comedy.getId())).isEqualTo(1L);
+        assertThat(userStorage.listUsers()).isEqualTo(users);
+        assertThat(friendshipStorage.isFriendshipConfirmed(alex.getId(), egor.getId())).isTrue();
+        assertThat(friendshipStorage.isFriendshipConfirmed(egor.getId(), alex.getId())).isTrue();
+        assertThat(friendshipStorage.isFriendshipConfirmed(anna.getId(), egor.getId())).isFalse();
+
+        // журнал продолжается после восстановления
+        likeStorage.addLike(comedy.getId(), alex.getId());
+        snapshots.recover();
+        assertThat(likeStorage.getFilmLikesTotalCount(comedy.getId())).isEqualTo(2L);
+    }
+
+    @Test
+    public void shouldReplayOnlyChangesAfterSnapshot() {
+
+        Film drama = filmStorage.addFilm(film("All Hates Cris", null));
+        User alex = userStorage.addUser(user("alex"));
+        User egor = userStorage.addUser(user("egor"));
+        likeStorage.addLike(drama.getId(), alex.getId());
+        likeStorage.addLike(drama.getId(), egor.getId());
+
+        snapshots.write(SNAPSHOT);
+
+        // сегменты, вошедшие в снимок, удалены - остался новый пустой сегмент
+        assertThat(listSegments()).hasSize(1);
+        assertThat(listSegments().get(0).toFile().length()).isZero();
+
+        likeStorage.deleteLike(drama.getId(), alex.getId());
+        Film comedy = filmStorage.addFilm(film("Tom and Jerry", null));
+        likeStorage.addLike(comedy.getId(), alex.getId());
+
+        snapshots.recover();
+
+        assertThat(filmStorage.listFilms()).extracting("name").containsExactly("All Hates Cris", "Tom and Jerry");
+        assertThat(likeStorage.getFilmLikesTotalCount(drama.getId())).isEqualTo(1L);
+        assertThat(likeStorage.getFilmLikesTotalCount(comedy.getId())).isEqualTo(1L);
+        assertThat(userStorage.listUsers()).hasSize(2);
+    }
+
+    @Test
+    public void shouldDropTornRecordAtLogTail() throws IOException {
+
+        Film drama = filmStorage.addFilm(film("All Hates Cris", null));
+        User alex = userStorage.addUser(user("alex"));
+        likeStorage.addLike(drama.getId(), alex.getId());
+
+        // недописанная запись: заголовок обещает 100 байт, записано 5
+        Path segment = listSegments().get(listSegments().size() - 1);
+        long validSize = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.allocate(13).putInt(100).putInt(12345).put(new byte[5]).flip());
+        }
+
+        snapshots.recover();
+
+        assertThat(Files.size(segment)).isEqualTo(validSize);
+        assertThat(likeStorage.getFilmLikesTotalCount(drama.getId())).isEqualTo(1L);
+
+        likeStorage.deleteLike(drama.getId(), alex.getId());
+        snapshots.recover();
+        assertThat(likeStorage.getFilmLikesTotalCount(drama.getId())).isZero();
+    }
+
+    @Test
+    public void shouldKeepReadFriendSetsUnchanged() {
+        // изменение дружбы сохраняет копию списка друзей - ранее полученный список не изменяется
+
+        User alex = userStorage.addUser(user("alex"));
+        User egor = userStorage.addUser(user("egor"));
+        User anna = userStorage.addUser(user("anna"));
+
+        friendshipStorage.addFriend(alex.getId(), egor.getId());
+        Set<Long> friendsBefore = friendshipStorage.listUserFriends(alex.getId());
+
+        friendshipStorage.addFriend(alex.getId(), anna.getId());
+        friendshipStorage.deleteFriend(alex.getId(), egor.getId());
+
+        assertThat(friendsBefore).containsExactly(egor.getId());
+        assertThat(friendshipStorage.listUserFriends(alex.getId())).containsExactly(anna.getId());
+
+        snapshots.recover();
+        assertThat(friendshipStorage.listUserFriends(alex.getId())).containsExactly(anna.getId());
+    }
+
+    @Test
+    public void shouldSuggestFriendsAfterRestart() {
+        // рекомендации друзей строятся по графу дружбы хранилища - после восстановления граф строится заново
+
+        User alex = userStorage.addUser(user("alex"));
+        User egor = userStorage.addUser(user("egor"));
+        User anna = userStorage.addUser(user("anna"));
+        User olga = userStorage.addUser(user("olga"));
+
+        friendshipStorage.addFriend(alex.getId(), egor.getId());
+        friendshipStorage.addFriend(alex.getId(), anna.getId());
+        friendshipStorage.addFriend(egor.getId(), olga.getId());
+        friendshipStorage.addFriend(anna.getId(), olga.getId());
+        friendshipStorage.addFriend(anna.getId(), egor.getId());
+
+        assertThat(friendshipStorage.listFriendSuggestions(alex.getId(), 10)).containsExactly(olga.getId());
+
+        snapshots.recover();
+        assertThat(friendshipStorage.listFriendSuggestions(alex.getId(), 10)).containsExactly(olga.getId());
+
+        friendshipStorage.deleteFriend(anna.getId(), olga.getId());
+        friendshipStorage.deleteFriend(egor.getId(), olga.getId());
+        assertThat(friendshipStorage.listFriendSuggestions(alex.getId(), 10)).isEmpty();
+    }
+
+    @Test
+    public void shouldFindFriendshipPathInFriendGraph() {
+
+        User alex = userStorage.addUser(user("alex"));
+        User egor = userStorage.addUser(user("egor"));
+        User anna = userStorage.addUser(user("anna"));
+        User olga = userStorage.addUser(user("olga"));
+
+        friendshipStorage.addFriend(alex.getId(), egor.getId());
+        friendshipStorage.addFriend(egor.getId(), anna.getId());
+        friendshipStorage.addFriend(anna.getId(), olga.getId());
+
+        assertThat(friendshipStorage.findFriendshipPath(alex.getId(), olga.getId(), 3))
+                .containsExactly(alex.getId(), egor.getId(), anna.getId(), olga.getId());
+        assertThat(friendshipStorage.findFriendshipPath(alex.getId(), olga.getId(), 2)).isEmpty();
+        assertThat(friendshipStorage.findFriendshipPath(olga.getId(), alex.getId(), 3)).isEmpty();
+    }
+
+    @Test
+    public void shouldFailOnDamagedRecordBeforeLogTail() throws IOException {
+        // поврежденная запись, за которой есть целые записи, - не недописанный конец: восстановление
+        // останавливается, записи после нее не отбрасываются
+
+        Film drama = filmStorage.addFilm(film("All Hates Cris", null));
+        User alex = userStorage.addUser(user("alex"));
+        likeStorage.addLike(drama.getId(), alex.getId());
+
+        Path segment = listSegments().get(listSegments().size() - 1);
+        long size = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // последний байт данных первой записи
+            ByteBuffer header = ByteBuffer.allocate(4);
+            channel.read(header, 0);
+            long position = 8 + header.flip().getInt() - 1;
+            ByteBuffer value = ByteBuffer.allocate(1);
+            channel.read(value, position);
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) (value.get(0) ^ 1)}), position);
+        }
+
+        assertThatThrownBy(() -> snapshots.recover())
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("поврежден");
+        assertThat(Files.size(segment)).isEqualTo(size);
+    }
+
+    @Test
+    public void shouldGroupCommitConcurrentLikes() throws Exception {
+        // лайки из 16 потоков - изменение возвращается после сброса своей записи, сбросов меньше, чем записей
+
+        Film drama = filmStorage.addFilm(film("All Hates Cris", null));
+        int threads = 16;
+        int likesPerThread = 200;
+        long syncsBefore = writeAheadLog.getSyncCount();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            long firstUserId = (long) t * likesPerThread + 1;
+            results.add(executor.submit(() -> {
+                start.await();
+                for (long userId = firstUserId; userId < firstUserId + likesPerThread; userId++) {
+                    likeStorage.addLike(drama.getId(), userId);
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get(2, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        long syncs = writeAheadLog.getSyncCount() - syncsBefore;
+        assertThat(syncs).isPositive().isLessThan(threads * likesPerThread);
+
+        snapshots.recover();
+        assertThat(likeStorage.getFilmLikesTotalCount(drama.getId())).isEqualTo((long) threads * likesPerThread);
+    }
+
+    @Test
+    public void shouldRecoverConcurrentLikesAndUnlikesOfOneFilm() throws Exception {
+        // одни и те же пользователи одновременно ставят и снимают лайки одному фильму - записи журнала идут
+        // не в порядке изменения наборов, но восстановление дает те же лайки
+
+        Film drama = filmStorage.addFilm(film("All Hates Cris", null));
+        int threads = 8;
+        int users = 20;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            Random random = new Random(t);
+            results.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 500; i++) {
+                    long userId = 1 + random.nextInt(users);
+                    try {
+                        if (random.nextBoolean()) {
+                            likeStorage.addLike(drama.getId(), userId);
+                        } else {
+                            likeStorage.deleteLike(drama.getId(), userId);
+                        }
+                    } catch (RuntimeException e) {
+                        // повторный лайк или удаление отсутствующего лайка
+                    }
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get(2, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        Map<Integer, long[]> likesBefore = new HashMap<>();
+        likeStorage.processFilmsLikes(likesBefore::put);
+        Long countBefore = likeStorage.getFilmLikesTotalCount(drama.getId());
+
+        snapshots.recover();
+
+        Map<Integer, long[]> likesAfter = new HashMap<>();
+        likeStorage.processFilmsLikes(likesAfter::put);
+        assertThat(likesAfter.getOrDefault(drama.getId(), new long[0]))
+                .containsExactlyInAnyOrder(likesBefore.getOrDefault(drama.getId(), new long[0]));
+        assertThat(likeStorage.getFilmLikesTotalCount(drama.getId())).isEqualTo(countBefore);
+    }
+
+    @Test
+    public void shouldAddUsersConcurrentlyWithReaders() throws Exception {
+        // пользователи добавляются из нескольких потоков одновременно с чтением страниц списка - id не повторяются
+
+        int threads = 8;
+        int usersPerThread = 300;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            results.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < usersPerThread; i++) {
+                    userStorage.addUser(user("user" + thread + "x" + i));
+                }
+                return null;
+            }));
+        }
+        Future<?> reader = executor.submit(() -> {
+            start.await();
+            while (userStorage.listUsersPage(0L, threads * usersPerThread).size() < threads * usersPerThread) {
+                userStorage.listUsersPage(0L, 100).forEach(user -> userStorage.getUserById(user.getId()));
+            }
+            return null;
+        });
+
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get(2, TimeUnit.MINUTES);
+        }
+        reader.get(2, TimeUnit.MINUTES);
+        executor.shutdown();
+
+        List<User> users = userStorage.listUsers();
+        assertThat(users).hasSize(threads * usersPerThread);
+        assertThat(users).extracting(User::getId).doesNotHaveDuplicates();
+    }
+
+    private static List<Path> listSegments() {
+
+        try (Stream<Path> files = Files.list(WAL_DIR)) {
+            return files.sorted(Comparator.naturalOrder()).collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Path createDataDir() {
+
+        try {
+            return Files.createTempDirectory("filmorate-wal");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Film film(String name, Set<FilmGenre> genres) {
+
+        return Film.builder()
+                .name(name)
+                .description("Описание фильма " + name)
+                .releaseDate(LocalDate.of(1995, 12, 28))
+                .duration(100)
+                .mpa(new Mpa(1, null))
+                .genres(genres)
+                .build();
+    }
+
+    private static User user(String login) {
+
+        return User.builder()
+                .email(login + "@yandex.ru")
+                .login(login)
+                .name(login)
+                .birthday(LocalDate.of(1990, 1, 15))
+                .build();
+    }
+
+}
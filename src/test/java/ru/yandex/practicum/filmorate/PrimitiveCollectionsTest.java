@@ -0,0 +1,264 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import ru.yandex.practicum.filmorate.storage.index.LongHashSet;
+import ru.yandex.practicum.filmorate.storage.index.LongObjectHashMap;
+import ru.yandex.practicum.filmorate.storage.memory.IdSetFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+public class PrimitiveCollectionsTest {
+
+    private static final int LOOKUPS = 5_000_000;
+    private static final int ROUNDS = 5;
+
+    @Test
+    public void shouldBehaveLikeHashSet() { // случайные добавления и удаления, включая id 0 и отрицательные id
+
+        Random random = new Random(23);
+        LongHashSet set = new LongHashSet();
+        Set<Long> expected = new HashSet<>();
+
+        for (int i = 0; i < 200_000; i++) {
+            long id = random.nextInt(5_000) - 100;
+            if (random.nextInt(3) == 0) {
+                assertThat(set.remove(id)).isEqualTo(expected.remove(id));
+            } else {
+                assertThat(set.add(id)).isEqualTo(expected.add(id));
+            }
+        }
+
+        assertThat(set).hasSize(expected.size()).containsExactlyInAnyOrderElementsOf(expected);
+        assertThat(set).isEqualTo(expected);
+        assertThat(set.hashCode()).isEqualTo(expected.hashCode());
+        assertThat(set.contains("1")).isFalse();
+
+        List<Long> ids = new ArrayList<>();
+        set.forEachId(ids::add);
+        assertThat(ids).containsExactlyInAnyOrderElementsOf(expected);
+
+        set.clear();
+        assertThat(set).isEmpty();
+        assertThat(set.contains(0L)).isFalse();
+    }
+
+    @Test
+    public void shouldBehaveLikeHashMap() { // случайные сохранения и удаления значений по ключам long
+
+        Random random = new Random(24);
+        LongObjectHashMap<String> map = new LongObjectHashMap<>();
+        Map<Long, String> expected = new HashMap<>();
+
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(5_000) - 100;
+            if (random.nextInt(3) == 0) {
+                assertThat(map.remove(key)).isEqualTo(expected.remove(key));
+            } else {
+                assertThat(map.put(key, "value " + i)).isEqualTo(expected.put(key, "value " + i));
+            }
+        }
+
+        assertThat(map.size()).isEqualTo(expected.size());
+        expected.forEach((key, value) -> assertThat(map.get(key)).isEqualTo(value));
+        assertThat(map.get(10_000)).isNull();
+        assertThat(map.computeIfAbsent(10_000, key -> "new " + key)).isEqualTo("new 10000");
+        assertThat(map.computeIfAbsent(10_000, key -> "other")).isEqualTo("new 10000");
+
+        List<String> values = new ArrayList<>();
+        map.forEachValue(values::add);
+        assertThat(values).hasSize(expected.size() + 1);
+
+        map.clear();
+        assertThat(map.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void shouldRemoveThroughIterator() { // removeIf, retainAll и removeAll удаляют через итератор
+
+        LongHashSet set = new LongHashSet();
+        Set<Long> expected = new HashSet<>();
+
+        // id 0, отрицательные id и плотный диапазон - цепочки ячеек, переходящие через конец таблицы
+        for (long id = -100; id < 10_000; id++) {
+            set.add(id);
+            expected.add(id);
+        }
+
+        set.removeIf(id -> id % 3 == 0);
+        expected.removeIf(id -> id % 3 == 0);
+        assertThat(set).hasSize(expected.size()).containsExactlyInAnyOrderElementsOf(expected);
+
+        // случайные удаления - значения, сдвинутые назад в ячейку удаленного значения, не теряются и не повторяются
+        Random random = new Random(7);
+        set.removeIf(id -> random.nextInt(4) == 0);
+        assertThat(set).hasSize(set.stream().distinct().toArray().length);
+        expected.retainAll(set);
+        assertThat(set).hasSize(expected.size()).containsExactlyInAnyOrderElementsOf(expected);
+
+        Set<Long> kept = Set.of(-1L, 1L, 2L, 4L, 9_998L, 9_999L);
+        set.retainAll(kept);
+        expected.retainAll(kept);
+        assertThat(set).hasSize(expected.size()).containsExactlyInAnyOrderElementsOf(expected);
+
+        set.add(0L);
+        set.removeAll(Set.of(2L, 9_998L));
+        expected.add(0L);
+        expected.removeAll(Set.of(2L, 9_998L));
+        assertThat(set).hasSize(expected.size()).containsExactlyInAnyOrderElementsOf(expected);
+
+        Iterator<Long> iterator = set.iterator();
+        assertThatThrownBy(iterator::remove).isInstanceOf(IllegalStateException.class);
+        while (iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+        assertThat(set).isEmpty();
+    }
+
+    @Test
+    public void shouldCreatePrimitiveIdSetsByDefault() {
+
+        IdSetFactory primitive = new IdSetFactory("primitive");
+
+        Set<Long> ids = primitive.toIdSet(new HashSet<>(List.of(1L, 2L, 3L)));
+        Set<Long> other = primitive.toIdSet(Set.of(2L, 3L, 4L));
+
+        assertThat(ids).isInstanceOf(LongHashSet.class).containsExactlyInAnyOrder(1L, 2L, 3L);
+        assertThat(primitive.toIdSet(ids)).isSameAs(ids);
+        assertThat(primitive.intersection(ids, other)).isInstanceOf(LongHashSet.class)
+                .containsExactlyInAnyOrder(2L, 3L);
+        assertThat(primitive.intersectionSize(ids, other)).isEqualTo(2);
+        assertThat(primitive.newConcurrentIdSet().add(5L)).isTrue();
+    }
+
+    // сравнение памяти и скорости словарей наборов id с упаковкой (HashMap<Long, HashSet<Long>>)
+    // и без нее (LongObjectHashMap<LongHashSet>) на данных хранилищ в памяти: дружба - 100 тыс. пользователей
+    // по 50 друзей, лайки - 10 тыс. фильмов по 500 лайков (по 5 млн связей)
+    // запуск: mvn test -Dtest=PrimitiveCollectionsTest -Dbenchmark=true
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    public void shouldUseLessMemoryThanBoxedCollections() {
+
+        compare("дружба", 100_000, 50, 100_000);
+        compare("лайки", 10_000, 500, 100_000);
+    }
+
+    private void compare(String name, int keys, int idsPerKey, int idRange) {
+
+        Measurement boxed = measure(BoxedIdSets::new, keys, idsPerKey, idRange);
+        Measurement primitive = measure(PrimitiveIdSets::new, keys, idsPerKey, idRange);
+
+        long edges = (long) keys * idsPerKey;
+        log.info("{}: связей {}, с упаковкой: {} МБ ({} байт на связь), заполнение {} нс, поиск {} нс; "
+                        + "без упаковки: {} МБ ({} байт на связь), заполнение {} нс, поиск {} нс", name, edges,
+                boxed.bytes >> 20, boxed.bytes / edges, boxed.fillNanos / edges, boxed.lookupNanos / LOOKUPS,
+                primitive.bytes >> 20, primitive.bytes / edges, primitive.fillNanos / edges,
+                primitive.lookupNanos / LOOKUPS);
+
+        assertThat(primitive.bytes * 2).isLessThan(boxed.bytes);
+    }
+
+    // прирост занятой памяти после заполнения и лучшее из ROUNDS время заполнения и поиска
+    private Measurement measure(Supplier<IdSets> newIdSets, int keys, int idsPerKey, int idRange) {
+
+        Measurement measurement = new Measurement();
+        measurement.fillNanos = Long.MAX_VALUE;
+        measurement.lookupNanos = Long.MAX_VALUE;
+
+        for (int round = 0; round < ROUNDS; round++) {
+
+            long before = usedMemory();
+            long start = System.nanoTime();
+
+            IdSets idSets = newIdSets.get();
+            Random random = new Random(23);
+            for (int key = 1; key <= keys; key++) {
+                for (int i = 0; i < idsPerKey; i++) {
+                    idSets.add(key, 1 + random.nextInt(idRange));
+                }
+            }
+            measurement.fillNanos = Math.min(measurement.fillNanos, System.nanoTime() - start);
+            measurement.bytes = usedMemory() - before;
+
+            start = System.nanoTime();
+            int found = 0;
+            for (int i = 0; i < LOOKUPS; i++) {
+                found += idSets.contains(1 + random.nextInt(keys), 1 + random.nextInt(idRange)) ? 1 : 0;
+            }
+            measurement.lookupNanos = Math.min(measurement.lookupNanos, System.nanoTime() - start);
+
+            assertThat(found).isPositive();
+        }
+
+        return measurement;
+    }
+
+    private static long usedMemory() {
+
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static final class Measurement {
+        long bytes;
+        long fillNanos;
+        long lookupNanos;
+    }
+
+    private interface IdSets {
+
+        void add(long key, long id);
+
+        boolean contains(long key, long id);
+    }
+
+    private static final class BoxedIdSets implements IdSets {
+
+        private final Map<Long, Set<Long>> sets = new HashMap<>();
+
+        @Override
+        public void add(long key, long id) {
+            sets.computeIfAbsent(key, k -> new HashSet<>()).add(id);
+        }
+
+        @Override
+        public boolean contains(long key, long id) {
+            Set<Long> set = sets.get(key);
+            return set != null && set.contains(id);
+        }
+    }
+
+    private static final class PrimitiveIdSets implements IdSets {
+
+        private final LongObjectHashMap<LongHashSet> sets = new LongObjectHashMap<>();
+
+        @Override
+        public void add(long key, long id) {
+            sets.computeIfAbsent(key, k -> new LongHashSet()).add(id);
+        }
+
+        @Override
+        public boolean contains(long key, long id) {
+            LongHashSet set = sets.get(key);
+            return set != null && set.contains(id);
+        }
+    }
+
+}
@@ -0,0 +1,164 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmGenre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.LikeStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.db.FriendshipDbStorage;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// проверка планов выполнения запросов хранилищ: каждый запрос по ключу должен использовать индекс,
+// а не полный просмотр таблицы (полные выгрузки таблиц - listFilms, loadFriendGraph и т.п. - не проверяются)
+@SpringBootTest
+@AutoConfigureTestDatabase
+@Import(StatementCounter.class)
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class QueryPlanTest {
+
+    // отметка полного просмотра таблицы в плане H2: "tableScan" у таблиц, "table scan" у OLD TABLE (...)
+    private static final Pattern TABLE_SCAN = Pattern.compile("(?i)table ?scan");
+
+    // запрос изменения данных внутри OLD TABLE (...) - его план проверяется отдельно
+    private static final Pattern DELTA_TABLE = Pattern.compile("(?is)\\bOLD TABLE\\s*\\((.+)\\)");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final UserStorage userStorage;
+    private final FilmStorage filmStorage;
+    private final LikeStorage likeStorage;
+    private final FriendshipDbStorage friendshipStorage;
+
+    private User user1;
+    private User user2;
+    private Film film;
+
+    @BeforeEach
+    public void beforeEach() {
+
+        user1 = userStorage.addUser(User.builder().email("alex@mail.ru").login("alex").name("Alex")
+                .birthday(LocalDate.of(1990, 1, 1)).build());
+        user2 = userStorage.addUser(User.builder().email("egor@mail.ru").login("egor").name("Egor")
+                .birthday(LocalDate.of(1991, 2, 2)).build());
+        film = filmStorage.addFilm(Film.builder().name("Film").description("Description")
+                .releaseDate(LocalDate.of(2000, 1, 1)).duration(100).mpa(new Mpa(1, null))
+                .genres(new LinkedHashSet<>(List.of(new FilmGenre(1, null)))).build());
+    }
+
+    @Test
+    public void friendshipQueriesShouldUseIndexes() { // запросы FriendshipDbStorage
+
+        StatementCounter.reset();
+
+        friendshipStorage.addFriend(user1.getId(), user2.getId());
+        friendshipStorage.addFriend(user2.getId(), user1.getId());
+        friendshipStorage.listUserFriends(user1.getId());
+        friendshipStorage.listUsersFriends(List.of(user1.getId(), user2.getId()));
+        friendshipStorage.isFriendshipConfirmed(user1.getId(), user2.getId());
+        friendshipStorage.deleteFriend(user1.getId(), user2.getId());
+
+        assertIndexedPlans(StatementCounter.statements());
+    }
+
+    @Test
+    public void likeQueriesShouldUseIndexes() { // запросы LikeDbStorage
+
+        StatementCounter.reset();
+
+        likeStorage.addLike(film.getId(), user1.getId());
+        likeStorage.getFilmLikesTotalCount(film.getId());
+        likeStorage.deleteLike(film.getId(), user1.getId());
+
+        assertIndexedPlans(StatementCounter.statements());
+    }
+
+    @Test
+    public void filmQueriesShouldUseIndexes() { // запросы FilmDbStorage
+
+        StatementCounter.reset();
+
+        filmStorage.checkFilmId(film.getId());
+        filmStorage.getFilmById(film.getId());
+        filmStorage.listFilmsPage(0, 10);
+        filmStorage.listFilmsByIds(List.of(film.getId()));
+        filmStorage.updateFilm(film.toBuilder()
+                .genres(new LinkedHashSet<>(List.of(new FilmGenre(2, null)))).build());
+        filmStorage.updateFilm(film.toBuilder().genres(new LinkedHashSet<>()).build());
+
+        assertIndexedPlans(StatementCounter.statements());
+    }
+
+    @Test
+    public void userLookupsShouldUseSecondaryIndexes() { // обращения по второму столбцу составных ключей
+
+        // входящие заявки в друзья и удаление пользователя (каскадное удаление дружбы и лайков)
+        assertIndexedPlans(List.of(
+                "SELECT initiator_id FROM friendship WHERE recipient_id = ?",
+                "SELECT film_id, liked_at FROM likes WHERE user_id = ? ORDER BY liked_at DESC",
+                "SELECT film_id FROM film_genres WHERE genre_id = ?"));
+    }
+
+    // проверка, что ни один из запросов на чтение и изменение данных не просматривает таблицу целиком
+    private void assertIndexedPlans(List<String> statements) {
+
+        Set<String> queries = new LinkedHashSet<>();
+        for (String sql : statements) {
+            Matcher deltaTable = DELTA_TABLE.matcher(sql);
+            queries.add(deltaTable.find() ? deltaTable.group(1) : sql);
+        }
+        queries.removeIf(sql -> sql.trim().toUpperCase().startsWith("INSERT"));
+
+        assertThat(queries).isNotEmpty();
+
+        for (String sql : queries) {
+            assertThat(explain(sql))
+                    .as("План запроса %s", sql)
+                    .doesNotContainPattern(TABLE_SCAN);
+        }
+    }
+
+    // получение плана выполнения запроса, параметры запроса не задаются
+    private String explain(String sql) {
+
+        return jdbcTemplate.execute((ConnectionCallback<String>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql)) {
+
+                int parameters = statement.getParameterMetaData().getParameterCount();
+                for (int i = 1; i <= parameters; i++) {
+                    statement.setObject(i, null);
+                }
+
+                StringBuilder plan = new StringBuilder();
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        plan.append(rs.getString(1)).append('\n');
+                    }
+                }
+                return plan.toString();
+            }
+        });
+    }
+
+}
@@ -0,0 +1,212 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import ru.yandex.practicum.filmorate.storage.index.RoaringIdSet;
+import ru.yandex.practicum.filmorate.storage.memory.IdSetFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+public class RoaringIdSetTest {
+
+    private static final int EDGES = 10_000_000;
+    private static final int IDS_PER_SET = 1_000;
+    private static final long ID_RANGE = 1_000_000;
+
+    @Test
+    public void shouldAddRemoveAndIterateInAscendingOrder() {
+
+        RoaringIdSet set = new RoaringIdSet();
+
+        assertThat(set.add(70_000L)).isTrue();
+        assertThat(set.add(5L)).isTrue();
+        assertThat(set.add(5L)).isFalse();
+        assertThat(set.add(1L << 40)).isTrue();
+        assertThat(set.add(65_535L)).isTrue();
+
+        assertThat(set).hasSize(4).containsExactly(5L, 65_535L, 70_000L, 1L << 40);
+        assertThat(set.contains(70_000L)).isTrue();
+        assertThat(set.contains(6L)).isFalse();
+        assertThat(set.contains("5")).isFalse();
+
+        assertThat(set.remove(65_535L)).isTrue();
+        assertThat(set.remove(65_535L)).isFalse();
+        assertThat(set).hasSize(3).containsExactly(5L, 70_000L, 1L << 40);
+
+        set.clear();
+        assertThat(set).isEmpty();
+    }
+
+    @Test
+    public void shouldConvertBetweenArrayAndBitmapContainers() { // один блок до 4096 значений и после
+
+        RoaringIdSet set = new RoaringIdSet();
+        Set<Long> expected = new TreeSet<>();
+
+        for (long id = 0; id < 20_000; id += 2) {
+            set.add(id);
+            expected.add(id);
+        }
+        assertThat(set).hasSize(10_000).containsExactlyElementsOf(expected);
+
+        for (long id = 0; id < 20_000; id += 4) {
+            set.remove(id);
+            expected.remove(id);
+        }
+        assertThat(set).hasSize(5_000).containsExactlyElementsOf(expected);
+
+        for (long id = 2; id < 20_000; id += 8) {
+            set.remove(id);
+            expected.remove(id);
+        }
+        assertThat(set).hasSize(2_500).containsExactlyElementsOf(expected);
+        assertThat(set).isEqualTo(expected);
+    }
+
+    @Test
+    public void shouldRemoveThroughIterator() { // removeIf, retainAll и removeAll удаляют через итератор
+
+        RoaringIdSet set = new RoaringIdSet();
+        Set<Long> expected = new TreeSet<>();
+
+        // плотный блок (битовая карта), разреженные блоки и блоки из одного id
+        for (long id = 0; id < 10_000; id++) {
+            set.add(id);
+            expected.add(id);
+        }
+        for (long block = 1; block <= 20; block++) {
+            set.add(block * 65_536 + block);
+            expected.add(block * 65_536 + block);
+        }
+
+        set.removeIf(id -> id % 3 == 0);
+        expected.removeIf(id -> id % 3 == 0);
+        assertThat(set).hasSize(expected.size()).containsExactlyElementsOf(expected);
+
+        Set<Long> kept = Set.of(1L, 2L, 4L, 65_537L, 20 * 65_536L + 20);
+        set.retainAll(kept);
+        expected.retainAll(kept);
+        assertThat(set).hasSize(expected.size()).containsExactlyElementsOf(expected);
+
+        set.removeAll(Set.of(2L, 20 * 65_536L + 20));
+        assertThat(set).containsExactly(1L, 4L, 65_537L);
+
+        Iterator<Long> iterator = set.iterator();
+        assertThatThrownBy(iterator::remove).isInstanceOf(IllegalStateException.class);
+        while (iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+        assertThat(set).isEmpty();
+    }
+
+    @Test
+    public void shouldIntersectLikeHashSet() { // пересечение на разреженных и плотных блоках
+
+        Random random = new Random(15);
+        Set<Long> firstExpected = new HashSet<>();
+        Set<Long> secondExpected = new HashSet<>();
+        RoaringIdSet first = new RoaringIdSet();
+        RoaringIdSet second = new RoaringIdSet();
+
+        for (int i = 0; i < 30_000; i++) {
+            long dense = random.nextInt(60_000);
+            long sparse = 65_536L * (1 + random.nextInt(40)) + random.nextInt(65_536);
+            first.add(dense);
+            firstExpected.add(dense);
+            second.add(i % 3 == 0 ? dense : sparse);
+            secondExpected.add(i % 3 == 0 ? dense : sparse);
+            if (i % 2 == 0) {
+                first.add(sparse);
+                firstExpected.add(sparse);
+            }
+        }
+
+        Set<Long> expected = new TreeSet<>(firstExpected);
+        expected.retainAll(secondExpected);
+
+        assertThat(RoaringIdSet.and(first, second)).containsExactlyElementsOf(expected);
+        assertThat(RoaringIdSet.andCardinality(first, second)).isEqualTo(expected.size());
+        assertThat(RoaringIdSet.and(first, new RoaringIdSet())).isEmpty();
+    }
+
+    @Test
+    public void shouldCreateIdSetsOfConfiguredType() {
+
+        IdSetFactory hash = new IdSetFactory("hash");
+        IdSetFactory roaring = new IdSetFactory("roaring");
+
+        Set<Long> ids = new HashSet<>(List.of(1L, 2L, 3L));
+
+        assertThat(hash.newIdSet()).isInstanceOf(HashSet.class);
+        assertThat(hash.toIdSet(ids)).isSameAs(ids);
+        assertThat(roaring.newIdSet()).isInstanceOf(RoaringIdSet.class);
+        assertThat(roaring.toIdSet(ids)).isInstanceOf(RoaringIdSet.class).isEqualTo(ids);
+        assertThat(roaring.toIdSet(null)).isInstanceOf(RoaringIdSet.class).isEmpty();
+
+        Set<Long> other = roaring.toIdSet(Set.of(2L, 3L, 4L));
+        assertThat(roaring.intersection(roaring.toIdSet(ids), other)).containsExactly(2L, 3L);
+        assertThat(roaring.intersectionSize(roaring.toIdSet(ids), other)).isEqualTo(2);
+        assertThat(hash.intersection(ids, Set.of(3L, 4L))).containsExactly(3L);
+
+        assertThatThrownBy(() -> new IdSetFactory("tree")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    // сравнение занимаемой памяти на 10 млн связей: 10 тыс. наборов по 1000 id из диапазона в 1 млн
+    // запуск: mvn test -Dtest=RoaringIdSetTest -Dbenchmark=true
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    public void shouldUseLessMemoryThanHashSet() {
+
+        long hashSetBytes = measureFootprint(HashSet::new);
+        long roaringBytes = measureFootprint(RoaringIdSet::new);
+
+        log.info("Связей: {}, HashSet: {} МБ ({} байт на id), RoaringIdSet: {} МБ ({} байт на id)", EDGES,
+                hashSetBytes >> 20, hashSetBytes / EDGES, roaringBytes >> 20, roaringBytes / EDGES);
+
+        assertThat(roaringBytes * 4).isLessThan(hashSetBytes);
+    }
+
+    // прирост занятой памяти после заполнения наборов
+    private long measureFootprint(Supplier<Set<Long>> newSet) {
+
+        long before = usedMemory();
+
+        Random random = new Random(10);
+        List<Set<Long>> sets = new ArrayList<>();
+        for (int i = 0; i < EDGES / IDS_PER_SET; i++) {
+            Set<Long> set = newSet.get();
+            while (set.size() < IDS_PER_SET) {
+                set.add((long) random.nextInt((int) ID_RANGE));
+            }
+            sets.add(set);
+        }
+
+        long footprint = usedMemory() - before;
+        assertThat(sets).hasSize(EDGES / IDS_PER_SET);
+
+        return footprint;
+    }
+
+    private static long usedMemory() {
+
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+}
@@ -0,0 +1,95 @@
+package ru.yandex.practicum.filmorate;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@TestConfiguration
+public class StatementCounter {
+
+    // подсчет SQL-запросов, отправленных в базу данных через источник данных приложения
+
+    private static final AtomicInteger STATEMENTS = new AtomicInteger();
+
+    // тексты подготовленных запросов в порядке их создания
+    private static final Queue<String> SQL = new ConcurrentLinkedQueue<>();
+
+    // обнуление счетчика запросов
+    public static void reset() {
+        STATEMENTS.set(0);
+        SQL.clear();
+    }
+
+    // получение количества запросов с момента последнего обнуления
+    public static int count() {
+        return STATEMENTS.get();
+    }
+
+    // получение текстов подготовленных запросов с момента последнего обнуления
+    public static List<String> statements() {
+        return List.copyOf(SQL);
+    }
+
+    // подмена источника данных на источник, считающий создаваемые запросы
+    @Bean
+    public static BeanPostProcessor statementCountingDataSource() {
+
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                return (bean instanceof DataSource) ? new CountingDataSource((DataSource) bean) : bean;
+            }
+        };
+    }
+
+    private static class CountingDataSource extends DelegatingDataSource {
+
+        CountingDataSource(DataSource dataSource) {
+            super(dataSource);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return countStatements(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return countStatements(super.getConnection(username, password));
+        }
+
+        // учитываем каждый созданный на соединении запрос
+        private Connection countStatements(Connection connection) {
+
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        String name = method.getName();
+                        if (name.equals("prepareStatement") || name.equals("createStatement")
+                                || name.equals("prepareCall")) {
+                            STATEMENTS.incrementAndGet();
+                        }
+                        if (!name.equals("createStatement") && args != null && args[0] instanceof String) {
+                            SQL.add((String) args[0]);
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+    }
+
+}
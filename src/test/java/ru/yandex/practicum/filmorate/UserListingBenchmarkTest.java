@@ -0,0 +1,130 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// замер времени получения списка пользователей с друзьями и его страниц на больших объемах данных
+// запуск: mvn test -Dtest=UserListingBenchmarkTest -Dbenchmark=true
+@Slf4j
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class UserListingBenchmarkTest {
+
+    private static final int FRIENDS_PER_USER = 4;
+    private static final int MEASUREMENTS = 3;
+    private static final int PAGE_SIZE = 1_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final UserStorage userStorage;
+
+    @Test
+    public void shouldListUsersInLinearTime() { // время получения списка растет линейно с количеством пользователей
+
+        Map<Integer, Long> timeBySize = new LinkedHashMap<>();
+        int loadedUsers = 0;
+
+        for (int size : new int[]{25_000, 50_000, 100_000}) {
+
+            addUsers(loadedUsers + 1, size);
+            loadedUsers = size;
+
+            // прогрев перед замерами
+            assertThat(userStorage.listUsers()).hasSize(size);
+
+            long bestTime = Long.MAX_VALUE;
+            for (int i = 0; i < MEASUREMENTS; i++) {
+                long start = System.nanoTime();
+                List<User> users = userStorage.listUsers();
+                bestTime = Math.min(bestTime, System.nanoTime() - start);
+                assertThat(users.get(size - 1).getFriends()).hasSize(FRIENDS_PER_USER);
+            }
+
+            timeBySize.put(size, bestTime);
+            log.info("Пользователей: {}, время получения списка: {} мс, на одного пользователя: {} мкс",
+                    size, bestTime / 1_000_000, bestTime / 1_000 / size);
+        }
+
+        // при четырехкратном росте данных время растет не более чем в восемь раз (с запасом на погрешность замера)
+        assertThat(timeBySize.get(100_000)).isLessThan(timeBySize.get(25_000) * 8);
+    }
+
+    @Test
+    public void shouldListUserPageInConstantTime() { // время получения страницы не зависит от количества пользователей
+
+        Map<Integer, Long> timeBySize = new LinkedHashMap<>();
+        int loadedUsers = 0;
+
+        for (int size : new int[]{25_000, 50_000, 100_000}) {
+
+            addUsers(loadedUsers + 1, size);
+            loadedUsers = size;
+
+            // страница из середины списка, прогрев перед замерами
+            long afterId = size / 2;
+            assertThat(userStorage.listUsersPage(afterId, PAGE_SIZE)).hasSize(PAGE_SIZE);
+
+            long bestTime = Long.MAX_VALUE;
+            for (int i = 0; i < MEASUREMENTS * 10; i++) {
+                long start = System.nanoTime();
+                List<User> users = userStorage.listUsersPage(afterId, PAGE_SIZE);
+                bestTime = Math.min(bestTime, System.nanoTime() - start);
+                assertThat(users.get(PAGE_SIZE - 1).getFriends()).hasSize(FRIENDS_PER_USER);
+            }
+
+            timeBySize.put(size, bestTime);
+            log.info("Пользователей: {}, время получения страницы из {}: {} мкс",
+                    size, PAGE_SIZE, bestTime / 1_000);
+        }
+
+        // при четырехкратном росте данных время страницы растет заметно меньше, чем в четыре раза
+        // (запас - на погрешность замера)
+        assertThat(timeBySize.get(100_000)).isLessThan(timeBySize.get(25_000) * 3);
+    }
+
+    // добавление пользователей с id от firstId до lastId, у каждого FRIENDS_PER_USER друзей среди предыдущих
+    private void addUsers(int firstId, int lastId) {
+
+        List<Object[]> users = LongStream.rangeClosed(firstId, lastId)
+                .mapToObj(id -> new Object[]{id, "user" + id + "@mail.ru", "User " + id, "user" + id,
+                        Date.valueOf(LocalDate.of(1990, 1, 1))})
+                .collect(Collectors.toList());
+
+        jdbcTemplate.batchUpdate("INSERT INTO users (user_id, email, user_name, login, birthday) "
+                + "VALUES (?, ?, ?, ?, ?)", users);
+
+        List<Object[]> friendships = new ArrayList<>();
+        for (long id = firstId; id <= lastId; id++) {
+            for (int i = 1; i <= FRIENDS_PER_USER; i++) {
+                long friendId = (id > i) ? id - i : id + i;
+                friendships.add(new Object[]{id, friendId, false});
+            }
+        }
+
+        jdbcTemplate.batchUpdate("INSERT INTO friendship (initiator_id, recipient_id, is_confirmed) "
+                + "VALUES (?, ?, ?)", friendships);
+    }
+
+}
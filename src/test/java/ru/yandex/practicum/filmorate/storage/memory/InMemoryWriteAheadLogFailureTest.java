@@ -0,0 +1,218 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// ошибка записи журнала изменений на диск: ожидающее изменение получает ошибку, журнал не принимает записи
+// до восстановления и не отмечает сброшенными записи, потерянные при ошибке
+// (тест в пакете журнала - канал сегмента подменяется каналом, имитирующим ошибку записи)
+public class InMemoryWriteAheadLogFailureTest {
+
+    private final List<FailingChannel> channels = new ArrayList<>();
+    private InMemoryWriteAheadLog writeAheadLog;
+
+    @TempDir
+    Path walDir;
+
+    @AfterEach
+    public void closeLog() {
+        writeAheadLog.close();
+    }
+
+    @Test
+    public void shouldRejectChangesAfterFailedFlush() throws Exception {
+
+        // сброс только вручную - интервал и размер пакета больше времени и объема теста
+        writeAheadLog = new InMemoryWriteAheadLog(walDir.toString(), 60_000, 1_000_000, path -> {
+            FailingChannel channel = new FailingChannel(
+                    FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE));
+            channels.add(channel);
+            return channel;
+        });
+        writeAheadLog.recover(0, (type, body) -> { });
+
+        appendLike(1L);
+        writeAheadLog.flush();
+        writeAheadLog.awaitDurable();
+
+        // запись на диск завершается ошибкой - ожидающий сброса поток получает ошибку
+        lastChannel().failing = true;
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> waiter = executor.submit(() -> {
+            appendLike(2L);
+            writeAheadLog.awaitDurable();
+            return null;
+        });
+        while (!waiter.isDone()) {
+            writeAheadLog.flush();
+            Thread.sleep(5);
+        }
+        assertThatThrownBy(() -> waiter.get(1, TimeUnit.MINUTES)).hasCauseInstanceOf(UncheckedIOException.class);
+        executor.shutdown();
+
+        // диск снова доступен, но журнал не принимает записи и не сообщает об успехе до восстановления
+        lastChannel().failing = false;
+        assertThatThrownBy(() -> appendLike(3L)).isInstanceOf(UncheckedIOException.class);
+
+        // лайк, не записанный в журнал, отменяется - счетчик не меняется
+        InMemoryLikeStorage likeStorage = new InMemoryLikeStorage(new IdSetFactory("primitive"),
+                new InMemoryLikeCounters(), new InMemoryWriteLock(writeAheadLog), writeAheadLog);
+        assertThatThrownBy(() -> likeStorage.addLike(2, 5L)).isInstanceOf(UncheckedIOException.class);
+        assertThat(likeStorage.getFilmLikesTotalCount(2)).isZero();
+        writeAheadLog.flush();
+        assertThat(writeAheadLog.getSyncCount()).isEqualTo(1);
+
+        // после восстановления применяется только сброшенная запись, журнал снова принимает записи
+        List<Long> replayed = new ArrayList<>();
+        writeAheadLog.recover(0, (type, body) -> replayed.add(body.getLong(body.position() + Integer.BYTES)));
+        assertThat(replayed).containsExactly(1L);
+
+        appendLike(4L);
+        writeAheadLog.flush();
+        writeAheadLog.awaitDurable();
+        assertThat(writeAheadLog.getSyncCount()).isEqualTo(2);
+    }
+
+    private void appendLike(long userId) {
+
+        writeAheadLog.append(InMemoryWriteAheadLog.LIKE_ADDED, out -> {
+            out.writeInt(1);
+            out.writeLong(userId);
+        });
+    }
+
+    private FailingChannel lastChannel() {
+        return channels.get(channels.size() - 1);
+    }
+
+    // канал файла, запись в который завершается ошибкой после включения failing
+    private static final class FailingChannel extends FileChannel {
+
+        private final FileChannel channel;
+        private volatile boolean failing;
+
+        FailingChannel(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            checkFailing();
+            return channel.write(src);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            checkFailing();
+            return channel.write(srcs, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            checkFailing();
+            return channel.write(src, position);
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            checkFailing();
+            channel.force(metaData);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return channel.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return channel.read(dsts, offset, length);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return channel.read(dst, position);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return channel.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            channel.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            channel.truncate(size);
+            return this;
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return channel.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return channel.transferFrom(src, position, count);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return channel.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return channel.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return channel.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            channel.close();
+        }
+
+        private void checkFailing() throws IOException {
+
+            if (failing) {
+                throw new IOException("Нет места на диске");
+            }
+        }
+    }
+
+}